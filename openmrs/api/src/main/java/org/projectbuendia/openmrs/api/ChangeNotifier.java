@@ -0,0 +1,84 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.projectbuendia.openmrs.api.db.hibernate.ChangeTrackingInterceptor;
+
+/**
+ * Tells in-process caches when persistent objects have changed.  Changes are
+ * collected by {@link ChangeTrackingInterceptor} and reported once per
+ * committed transaction, whether the change came from one of our REST
+ * resources, the xforms module, or the OpenMRS admin UI.
+ */
+public class ChangeNotifier {
+	
+	/** Receives notifications of committed changes. */
+	public interface Listener {
+		
+		/**
+		 * Called after a transaction commits.  Implementations should be quick
+		 * (typically just invalidating a cache) as they run on the thread that
+		 * committed the transaction.
+		 * 
+		 * @param changedClasses the classes of all the entities that were
+		 *     created, updated, or deleted in the transaction
+		 */
+		void onChange(Set<Class<?>> changedClasses);
+	}
+	
+	private static final Log log = LogFactory.getLog(ChangeNotifier.class);
+	
+	private static final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	
+	private ChangeNotifier() {
+	}
+	
+	public static void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	public static void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	/** Reports a set of changed entity classes to all the listeners. */
+	public static void fireChanges(Set<Class<?>> changedClasses) {
+		Set<Class<?>> classes = Collections.unmodifiableSet(changedClasses);
+		for (Listener listener : listeners) {
+			try {
+				listener.onChange(classes);
+			}
+			catch (RuntimeException e) {
+				log.error("Change listener " + listener + " failed", e);
+			}
+		}
+	}
+	
+	/** Returns true if any of the given classes is, or is a subclass of, the given type. */
+	public static boolean anyOf(Set<Class<?>> changedClasses, Class<?>... types) {
+		for (Class<?> changed : changedClasses) {
+			for (Class<?> type : types) {
+				if (type.isAssignableFrom(changed)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
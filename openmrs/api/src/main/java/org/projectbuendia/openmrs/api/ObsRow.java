@@ -0,0 +1,66 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api;
+
+import java.util.Date;
+
+/**
+ * One observation, with the fields of its encounter that clients need, read
+ * by {@link ProjectBuendiaService#getObsRows(Date, Date)} without loading the
+ * Encounter, Obs, and Concept entities.  An encounter with no observations
+ * is reported as a single row whose observation fields are all null.
+ */
+public class ObsRow {
+	
+	public final String patientUuid;
+	
+	public final String encounterUuid;
+	
+	public final Date encounterDatetime;
+	
+	/** The question concept's UUID, or null if this row has no observation. */
+	public final String conceptUuid;
+	
+	/** The ID of the question concept's datatype. */
+	public final Integer datatypeId;
+	
+	/** The HL7 abbreviation of the question concept's datatype, e.g. "NM". */
+	public final String hl7Type;
+	
+	public final String valueCodedUuid;
+	
+	public final Double valueNumeric;
+	
+	public final String valueText;
+	
+	/** The value of a date or datetime observation. */
+	public final Date valueDatetime;
+	
+	/** The UUID of the order this observation refers to, if any. */
+	public final String orderUuid;
+	
+	public ObsRow(String patientUuid, String encounterUuid, Date encounterDatetime,
+	    String conceptUuid, Integer datatypeId, String hl7Type, String valueCodedUuid,
+	    Double valueNumeric, String valueText, Date valueDatetime, String orderUuid) {
+		this.patientUuid = patientUuid;
+		this.encounterUuid = encounterUuid;
+		this.encounterDatetime = encounterDatetime;
+		this.conceptUuid = conceptUuid;
+		this.datatypeId = datatypeId;
+		this.hl7Type = hl7Type;
+		this.valueCodedUuid = valueCodedUuid;
+		this.valueNumeric = valueNumeric;
+		this.valueText = valueText;
+		this.valueDatetime = valueDatetime;
+		this.orderUuid = orderUuid;
+	}
+}
@@ -0,0 +1,41 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api;
+
+import java.util.Date;
+
+/**
+ * The fields of an order that clients need, read by
+ * {@link ProjectBuendiaService#getLatestOrderRows()} without loading the Order
+ * and the entities it refers to.
+ */
+public class OrderRow {
+	
+	public final String uuid;
+	
+	public final String patientUuid;
+	
+	public final String instructions;
+	
+	public final Date scheduledDate;
+	
+	public final Date autoExpireDate;
+	
+	public OrderRow(String uuid, String patientUuid, String instructions, Date scheduledDate,
+	    Date autoExpireDate) {
+		this.uuid = uuid;
+		this.patientUuid = patientUuid;
+		this.instructions = instructions;
+		this.scheduledDate = scheduledDate;
+		this.autoExpireDate = autoExpireDate;
+	}
+}
@@ -0,0 +1,56 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api;
+
+import java.util.Date;
+
+/**
+ * The fields of a patient that the patient list sends to clients, read by
+ * {@link ProjectBuendiaService#getPatientRows(Date, org.openmrs.PatientIdentifierType,
+ * org.openmrs.PersonAttributeType)} without loading the Patient and its collections.
+ */
+public class PatientRow {
+	
+	public final Integer patientId;
+	
+	public final String uuid;
+	
+	public final boolean voided;
+	
+	public final String gender;
+	
+	public final Date birthdate;
+	
+	/** From the preferred name, or the first name if none is preferred; may be null. */
+	public final String givenName;
+	
+	public final String familyName;
+	
+	/** The preferred identifier of the requested type, or the first; may be null. */
+	public final String identifier;
+	
+	/** The value of the requested person attribute (e.g. a location ID); may be null. */
+	public final String attributeValue;
+	
+	public PatientRow(Integer patientId, String uuid, boolean voided, String gender, Date birthdate,
+	    String givenName, String familyName, String identifier, String attributeValue) {
+		this.patientId = patientId;
+		this.uuid = uuid;
+		this.voided = voided;
+		this.gender = gender;
+		this.birthdate = birthdate;
+		this.givenName = givenName;
+		this.familyName = familyName;
+		this.identifier = identifier;
+		this.attributeValue = attributeValue;
+	}
+}
@@ -11,7 +11,21 @@
 
 package org.projectbuendia.openmrs.api;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
 import org.openmrs.api.OpenmrsService;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -26,9 +40,221 @@ import org.springframework.transaction.annotation.Transactional;
  */
 @Transactional
 public interface ProjectBuendiaService extends OpenmrsService {
-     
-	/*
-	 * Add service methods here
+	
+	/**
+	 * Counts the non-voided patients assigned to each location, using a single
+	 * aggregate query rather than loading every patient.
+	 * 
+	 * @param assignedLocationType the person attribute type whose value holds
+	 *     the ID of the patient's assigned location
+	 * @return a map from location ID to the number of patients assigned to
+	 *     that location; locations with no patients are absent from the map
+	 */
+	@Transactional(readOnly = true)
+	Map<Integer, Long> getPatientCountsByLocation(PersonAttributeType assignedLocationType);
+	
+	/**
+	 * Gets all the patients that are not voided, with their names, identifiers
+	 * and person attributes already loaded, so that listing them takes a few
+	 * queries in total instead of a few queries per patient.
+	 * 
+	 * @return the unvoided patients, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<Patient> getAllPatients();
+	
+	/**
+	 * Gets the patients, including voided ones, that were created, changed or
+	 * voided at or after the given time, or that were given a new name or
+	 * person attribute (such as an assigned location) at or after that time.
+	 * Each condition is checked by a separate indexed query, so the cost
+	 * depends on the number of changes rather than the number of patients.
+	 * Their names, identifiers and person attributes are loaded too, as in
+	 * {@link #getAllPatients()}.
+	 * 
+	 * @param since the earliest modification time to include
+	 * @return the modified patients, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<Patient> getPatientsModifiedSince(Date since);
+	
+	/**
+	 * Gets the providers, including retired ones, that were created, changed
+	 * or retired at or after the given time, or whose person was given a new
+	 * name at or after that time.
+	 * 
+	 * @param since the earliest modification time to include
+	 * @return the modified providers, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<Provider> getProvidersModifiedSince(Date since);
+	
+	/**
+	 * Gets the encounters that were voided at or after the given time, using
+	 * an indexed query on the void time.
+	 * 
+	 * @param since the earliest void time to include
+	 * @return the voided encounters
+	 */
+	@Transactional(readOnly = true)
+	List<Encounter> getEncountersVoidedSince(Date since);
+	
+	/**
+	 * Gets the observations that were voided at or after the given time and
+	 * that belong to encounters that are not voided, with their encounters and
+	 * concepts already loaded.  (Observations in voided encounters are covered
+	 * by {@link #getEncountersVoidedSince(Date)}.)
+	 * 
+	 * @param since the earliest void time to include
+	 * @return the voided observations
+	 */
+	@Transactional(readOnly = true)
+	List<Obs> getObsVoidedSince(Date since);
+	
+	/**
+	 * Gets the latest revision of each of a patient's orders, i.e. the
+	 * non-voided orders in non-voided encounters that no other non-voided order
+	 * revises, using one query however long the orders' revision histories are.
+	 * 
+	 * @param patient the patient whose orders to get
+	 * @return the latest revisions of the patient's orders
+	 */
+	@Transactional(readOnly = true)
+	List<Order> getLatestOrdersByPatient(Patient patient);
+	
+	/**
+	 * Like {@link #getLatestOrdersByPatient(Patient)}, for many patients at once.
+	 * 
+	 * @param patients the patients whose orders to get, or null for all patients
+	 * @return the latest revisions of the patients' orders
+	 */
+	@Transactional(readOnly = true)
+	List<Order> getLatestOrders(Collection<Patient> patients);
+	
+	/**
+	 * Gets the concepts with the given IDs by one query, rather than one
+	 * lookup per concept.
+	 * 
+	 * @param conceptIds the IDs of the concepts to get
+	 * @return the concepts that exist, retired or not, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<Concept> getConcepts(Collection<Integer> conceptIds);
+	
+	/**
+	 * Gets the fields that the patient list needs, by a few projection
+	 * queries over all the patients rather than by loading each Patient with
+	 * its names, identifiers, and attributes.
+	 * 
+	 * @param since if null, all non-voided patients are returned; otherwise,
+	 *     the patients modified at or after this time, including voided ones,
+	 *     as in {@link #getPatientsModifiedSince(Date)}
+	 * @param identifierType the type of identifier to fill in, or null to
+	 *     leave identifiers out
+	 * @param attributeType the type of person attribute to fill in, or null to
+	 *     leave attributes out
+	 * @return the patients' rows, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<PatientRow> getPatientRows(Date since, PatientIdentifierType identifierType,
+	        PersonAttributeType attributeType);
+	
+	/**
+	 * Gets the IDs and UUIDs of all the non-voided patients, by a single
+	 * projection query, for callers that need nothing else about them.
+	 * 
+	 * @return a map from patient ID to UUID
+	 */
+	@Transactional(readOnly = true)
+	Map<Integer, String> getPatientUuids();
+	
+	/**
+	 * Gets the observations in all non-voided encounters of non-voided
+	 * patients, by a single projection query.  Only non-voided observations
+	 * are included, and an encounter with none is still reported, as one row
+	 * with no observation.
+	 * 
+	 * @param since if not null, only encounters created or changed at or after
+	 *     this time are included
+	 * @param before only encounters created strictly before this time are
+	 *     included
+	 * @return the rows, grouped by patient and then by encounter, with each
+	 *     patient's most recent encounters first
+	 */
+	@Transactional(readOnly = true)
+	List<ObsRow> getObsRows(Date since, Date before);
+	
+	/**
+	 * Like {@link #getLatestOrders(Collection)} for all patients, but reads
+	 * just the fields clients need, by a single projection query.
+	 * 
+	 * @return the latest revisions of all the orders
+	 */
+	@Transactional(readOnly = true)
+	List<OrderRow> getLatestOrderRows();
+	
+	/**
+	 * Work to be done by {@link ProjectBuendiaService#read(Reader)}.
+	 */
+	interface Reader<T> {
+		
+		T read();
+	}
+	
+	/**
+	 * Runs the given reader in a read-only transaction, with the Hibernate
+	 * session set not to flush and to load entities read-only, so that a
+	 * request that loads thousands of entities doesn't pay to take a snapshot
+	 * of each one and compare it again at every query and at commit.  (Spring
+	 * only sets the flush mode for a session it opens itself, but OpenMRS
+	 * opens the session for the whole web request before any transaction.)
+	 * The session's settings are restored afterwards, but the entities loaded
+	 * by the reader stay read-only for the rest of the session, so the reader
+	 * should only be used for requests that don't go on to modify them.
+	 * 
+	 * @param reader the work to do
+	 * @return the result of the reader
+	 */
+	@Transactional(readOnly = true)
+	<T> T read(Reader<T> reader);
+	
+	/**
+	 * Work to be done by {@link ProjectBuendiaService#readSnapshot(SnapshotReader)}.
+	 */
+	interface SnapshotReader<T> {
+		
+		/**
+		 * @param snapshotTime the database clock time, in epoch milliseconds,
+		 *     at which the snapshot was taken
+		 */
+		T read(long snapshotTime);
+	}
+	
+	/**
+	 * Runs the given reader in a read-only REPEATABLE READ transaction, so that
+	 * every service call it makes sees the same consistent snapshot of the
+	 * database.  The snapshot time is read from the database clock by the same
+	 * statement that establishes the snapshot, so a client that later asks for
+	 * items created or changed at or after this time gets exactly the ones it
+	 * has not yet seen.
+	 * <p>
+	 * Two caveats: the database clock may have only one-second resolution,
+	 * in which case the snapshot time is rounded down (so the next incremental
+	 * fetch overlaps by up to a second, but never misses anything); and a
+	 * write transaction that is still in flight when the snapshot is taken,
+	 * and commits afterwards, can carry a creation time before the snapshot
+	 * time.  The second case is inherent to timestamp-based sync.
+	 * <p>
+	 * The session is read-only while the reader runs, as in {@link #read(Reader)},
+	 * and the transaction is read-only too, so the reader must not write
+	 * anything: a save that isn't flushed is silently lost, and one that is
+	 * fails.  Anything that has to be looked up or created on first use (such
+	 * as the identifier and attribute types that the REST resources get or
+	 * create) must be obtained before calling this, and passed in.
 	 * 
+	 * @param reader the work to do within the snapshot
+	 * @return the result of the reader
 	 */
+	@Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+	<T> T readSnapshot(SnapshotReader<T> reader);
 }
\ No newline at end of file
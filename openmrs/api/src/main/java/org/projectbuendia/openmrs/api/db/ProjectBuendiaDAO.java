@@ -11,6 +11,22 @@
 
 package org.projectbuendia.openmrs.api.db;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
+import org.projectbuendia.openmrs.api.ObsRow;
+import org.projectbuendia.openmrs.api.OrderRow;
+import org.projectbuendia.openmrs.api.PatientRow;
 import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 
 /**
@@ -18,7 +34,79 @@ import org.projectbuendia.openmrs.api.ProjectBuendiaService;
  */
 public interface ProjectBuendiaDAO {
 	
-	/*
-	 * Add DAO methods here
+	/**
+	 * @see ProjectBuendiaService#getPatientCountsByLocation(PersonAttributeType)
+	 */
+	Map<Integer, Long> getPatientCountsByLocation(PersonAttributeType assignedLocationType);
+	
+	/**
+	 * @see ProjectBuendiaService#getAllPatients()
+	 */
+	List<Patient> getAllPatients();
+	
+	/**
+	 * @see ProjectBuendiaService#getPatientsModifiedSince(Date)
+	 */
+	List<Patient> getPatientsModifiedSince(Date since);
+	
+	/**
+	 * @see ProjectBuendiaService#getProvidersModifiedSince(Date)
+	 */
+	List<Provider> getProvidersModifiedSince(Date since);
+	
+	/**
+	 * @see ProjectBuendiaService#getEncountersVoidedSince(Date)
+	 */
+	List<Encounter> getEncountersVoidedSince(Date since);
+	
+	/**
+	 * @see ProjectBuendiaService#getObsVoidedSince(Date)
+	 */
+	List<Obs> getObsVoidedSince(Date since);
+	
+	/**
+	 * @see ProjectBuendiaService#getLatestOrders(Collection)
+	 */
+	List<Order> getLatestOrders(Collection<Patient> patients);
+	
+	/**
+	 * @see ProjectBuendiaService#getConcepts(Collection)
+	 */
+	List<Concept> getConcepts(Collection<Integer> conceptIds);
+	
+	/**
+	 * @see ProjectBuendiaService#getPatientRows(Date, PatientIdentifierType, PersonAttributeType)
+	 */
+	List<PatientRow> getPatientRows(Date since, PatientIdentifierType identifierType,
+	        PersonAttributeType attributeType);
+	
+	/**
+	 * @see ProjectBuendiaService#getPatientUuids()
+	 */
+	Map<Integer, String> getPatientUuids();
+	
+	/**
+	 * @see ProjectBuendiaService#getObsRows(Date, Date)
+	 */
+	List<ObsRow> getObsRows(Date since, Date before);
+	
+	/**
+	 * @see ProjectBuendiaService#getLatestOrderRows()
+	 */
+	List<OrderRow> getLatestOrderRows();
+	
+	/**
+	 * Runs the given reader with the current session set not to flush and to
+	 * load entities read-only, restoring the session's settings afterwards.
+	 * 
+	 * @see ProjectBuendiaService#read(ProjectBuendiaService.Reader)
+	 */
+	<T> T runReadOnly(ProjectBuendiaService.Reader<T> reader);
+	
+	/**
+	 * Reads the current time from the database clock.  The query reads a
+	 * table so that, as the first statement of a REPEATABLE READ transaction,
+	 * it also establishes the transaction's snapshot.
 	 */
+	Date getDatabaseTime();
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api.db.hibernate;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.CallbackException;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Hibernate;
+import org.hibernate.Transaction;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.type.Type;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+/**
+ * Records the classes of all entities saved, updated, or deleted during a
+ * transaction, and passes them to {@link ChangeNotifier} once the transaction
+ * has committed.  OpenMRS chains every {@link org.hibernate.Interceptor} bean
+ * in the application context into its session factory, so declaring this
+ * class as a bean in moduleApplicationContext.xml is enough to install it.
+ */
+public class ChangeTrackingInterceptor extends EmptyInterceptor {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final ThreadLocal<Set<Class<?>>> changedClasses = new ThreadLocal<Set<Class<?>>>() {
+		
+		@Override
+		protected Set<Class<?>> initialValue() {
+			return new HashSet<Class<?>>();
+		}
+	};
+	
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		record(entity);
+		return false;
+	}
+	
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		record(entity);
+		return false;
+	}
+	
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		record(entity);
+	}
+	
+	@Override
+	public void onCollectionRecreate(Object collection, Serializable key) throws CallbackException {
+		recordOwner(collection);
+	}
+	
+	@Override
+	public void onCollectionRemove(Object collection, Serializable key) throws CallbackException {
+		recordOwner(collection);
+	}
+	
+	@Override
+	public void onCollectionUpdate(Object collection, Serializable key) throws CallbackException {
+		recordOwner(collection);
+	}
+	
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		Set<Class<?>> changed = changedClasses.get();
+		if (changed.isEmpty()) {
+			return;
+		}
+		changedClasses.remove();
+		if (tx.wasCommitted()) {
+			ChangeNotifier.fireChanges(changed);
+		}
+	}
+	
+	private void record(Object entity) {
+		if (entity != null) {
+			changedClasses.get().add(Hibernate.getClass(entity));
+		}
+	}
+	
+	private void recordOwner(Object collection) {
+		if (collection instanceof PersistentCollection) {
+			record(((PersistentCollection) collection).getOwner());
+		}
+	}
+}
@@ -11,9 +11,33 @@
 
 package org.projectbuendia.openmrs.api.db.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
+import org.projectbuendia.openmrs.api.ObsRow;
+import org.projectbuendia.openmrs.api.OrderRow;
+import org.projectbuendia.openmrs.api.PatientRow;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.api.db.ProjectBuendiaDAO;
 
 /**
@@ -22,6 +46,102 @@ import org.projectbuendia.openmrs.api.db.ProjectBuendiaDAO;
 public class HibernateProjectBuendiaDAO implements ProjectBuendiaDAO {
 	protected final Log log = LogFactory.getLog(this.getClass());
 	
+	/**
+	 * IDs of patients modified at or after :since.  Each branch of the union
+	 * compares a single column that is indexed (see liquibase.xml), which
+	 * lets MySQL use an index for every branch; a single query that ORs the
+	 * conditions together would scan the whole table.  PatientResource edits
+	 * a patient's name or assigned location by adding a new row and voiding
+	 * the old one (see DbUtil.setPersonAttributeValue), so the creation times
+	 * of names and attributes cover those edits.
+	 */
+	private static final String PATIENT_IDS_MODIFIED_SINCE_SQL =
+			"select patient_id from patient where date_created >= :since"
+			+ " union select patient_id from patient where date_changed >= :since"
+			+ " union select patient_id from patient where date_voided >= :since"
+			+ " union select p.patient_id from person s join patient p on p.patient_id = s.person_id"
+			+ "   where s.date_changed >= :since"
+			+ " union select p.patient_id from person_name n join patient p on p.patient_id = n.person_id"
+			+ "   where n.date_created >= :since"
+			+ " union select p.patient_id from person_attribute a join patient p on p.patient_id = a.person_id"
+			+ "   where a.date_created >= :since";
+	
+	/** IDs of providers modified at or after :since; see PATIENT_IDS_MODIFIED_SINCE_SQL. */
+	private static final String PROVIDER_IDS_MODIFIED_SINCE_SQL =
+			"select provider_id from provider where date_created >= :since"
+			+ " union select provider_id from provider where date_changed >= :since"
+			+ " union select provider_id from provider where date_retired >= :since"
+			+ " union select v.provider_id from person_name n join provider v on v.person_id = n.person_id"
+			+ "   where n.date_created >= :since";
+	
+	/**
+	 * Selects the orders that are not revised by another order.  The subquery
+	 * uses the index on the previous_order_id foreign key.
+	 */
+	private static final String LATEST_ORDERS_FROM_HQL =
+			" from Order o join o.encounter e"
+			+ " where o.voided = false and e.voided = false"
+			+ " and not exists (from Order r where r.previousOrder = o and r.voided = false)";
+	
+	private static final String LATEST_ORDERS_HQL = "select o" + LATEST_ORDERS_FROM_HQL;
+	
+	private static final String LATEST_ORDER_ROWS_HQL =
+			"select new org.projectbuendia.openmrs.api.OrderRow(o.uuid, o.patient.uuid,"
+			+ " o.instructions, o.scheduledDate, o.autoExpireDate)" + LATEST_ORDERS_FROM_HQL;
+	
+	/**
+	 * Selects a row for each observation, or for each encounter with no
+	 * observations, in non-voided encounters of non-voided patients.  The
+	 * caller appends any further conditions and ORDER_BY_ENCOUNTER.
+	 */
+	private static final String OBS_ROWS_HQL =
+			"select new org.projectbuendia.openmrs.api.ObsRow(p.uuid, e.uuid, e.encounterDatetime,"
+			+ " c.uuid, d.conceptDatatypeId, d.hl7Abbreviation, v.uuid,"
+			+ " o.valueNumeric, o.valueText, o.valueDatetime, r.uuid)"
+			+ " from Encounter e join e.patient p"
+			+ " left join e.obs o with o.voided = false"
+			+ " left join o.concept c left join c.datatype d"
+			+ " left join o.valueCoded v left join o.order r"
+			+ " where e.voided = false and p.voided = false and e.dateCreated < :before";
+	
+	private static final String ORDER_BY_ENCOUNTER =
+			" order by p.patientId, e.encounterDatetime desc, e.encounterId, o.obsId";
+	
+	/**
+	 * Queries for the fields of the patient list; see getPatientRows.  Where a
+	 * patient has several names or identifiers, the preferred one comes first.
+	 */
+	private static final String PATIENT_FIELDS_HQL =
+			"select p.patientId, p.uuid, p.voided, p.gender, p.birthdate from Patient p"
+			+ " where p.patientId in (:ids)";
+	
+	private static final String PATIENT_NAMES_HQL =
+			"select n.person.personId, n.givenName, n.familyName from PersonName n"
+			+ " where n.voided = false and n.person.personId in (:ids)"
+			+ " order by n.preferred desc, n.personNameId";
+	
+	private static final String PATIENT_IDENTIFIERS_HQL =
+			"select i.patient.patientId, i.identifier from PatientIdentifier i"
+			+ " where i.voided = false and i.identifierType = :type and i.patient.patientId in (:ids)"
+			+ " order by i.preferred desc, i.patientIdentifierId";
+	
+	private static final String PATIENT_ATTRIBUTES_HQL =
+			"select a.person.personId, a.value from PersonAttribute a"
+			+ " where a.voided = false and a.attributeType = :type and a.person.personId in (:ids)"
+			+ " order by a.personAttributeId";
+	
+	/** Queries that fetch the collections read when listing patients; see fetchPatientDetails. */
+	private static final String[] PATIENT_DETAILS_HQL = {
+			"select p from Patient p left join fetch p.names where p.patientId in (:ids)",
+			"select p from Patient p left join fetch p.identifiers i left join fetch i.identifierType"
+					+ " where p.patientId in (:ids)",
+			"select p from Patient p left join fetch p.attributes a left join fetch a.attributeType"
+					+ " where p.patientId in (:ids)"
+	};
+	
+	/** Limits the length of the "in" lists used to load entities by ID. */
+	private static final int MAX_IDS_PER_QUERY = 1000;
+	
 	private SessionFactory sessionFactory;
 	
 	/**
@@ -37,4 +157,265 @@ public class HibernateProjectBuendiaDAO implements ProjectBuendiaDAO {
     public SessionFactory getSessionFactory() {
 	    return sessionFactory;
     }
-}
\ No newline at end of file
+
+	@Override
+	public Map<Integer, Long> getPatientCountsByLocation(PersonAttributeType assignedLocationType) {
+		// The assigned location is stored as a string attribute holding the
+		// location ID, so we group by the raw attribute value.
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+				"select a.value, count(p) from Patient p, PersonAttribute a"
+				+ " where a.person.personId = p.patientId"
+				+ " and a.attributeType = :type"
+				+ " and a.voided = false and p.voided = false"
+				+ " group by a.value")
+				.setParameter("type", assignedLocationType)
+				.list();
+		Map<Integer, Long> counts = new HashMap<Integer, Long>();
+		for (Object[] row : rows) {
+			try {
+				counts.put(Integer.valueOf((String) row[0]), ((Number) row[1]).longValue());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring non-numeric assigned location: " + row[0]);
+			}
+		}
+		return counts;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Patient> getAllPatients() {
+		List<Patient> patients = sessionFactory.getCurrentSession().createQuery(
+				"from Patient where voided = false")
+				.list();
+		fetchPatientDetails(patients);
+		return patients;
+	}
+	
+	@Override
+	public List<Patient> getPatientsModifiedSince(Date since) {
+		List<Patient> patients = loadByIds("from Patient where patientId in (:ids)",
+				getIdsModifiedSince(PATIENT_IDS_MODIFIED_SINCE_SQL, since));
+		fetchPatientDetails(patients);
+		return patients;
+	}
+	
+	/**
+	 * Loads the names, identifiers and person attributes of the given patients,
+	 * which are lazy collections that would otherwise take a query each per
+	 * patient.  Each collection is fetched by its own query, because fetching
+	 * all three in one query would return the product of their sizes in rows.
+	 * The patients are already in the session, so these queries just fill in
+	 * their collections.
+	 */
+	private void fetchPatientDetails(List<Patient> patients) {
+		List<Integer> ids = new ArrayList<Integer>(patients.size());
+		for (Patient patient : patients) {
+			ids.add(patient.getPatientId());
+		}
+		for (String hql : PATIENT_DETAILS_HQL) {
+			loadByIds(hql, ids);
+		}
+	}
+	
+	@Override
+	public List<Provider> getProvidersModifiedSince(Date since) {
+		return loadByIds("from Provider where providerId in (:ids)",
+				getIdsModifiedSince(PROVIDER_IDS_MODIFIED_SINCE_SQL, since));
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncountersVoidedSince(Date since) {
+		return sessionFactory.getCurrentSession().createQuery(
+				"from Encounter e where e.dateVoided >= :since and e.voided = true")
+				.setTimestamp("since", since)
+				.list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Obs> getObsVoidedSince(Date since) {
+		// Fetching the encounters and concepts here saves a query per observation
+		// when the caller looks up their UUIDs.
+		return sessionFactory.getCurrentSession().createQuery(
+				"select o from Obs o join fetch o.encounter e join fetch o.concept"
+				+ " where o.dateVoided >= :since and o.voided = true and e.voided = false")
+				.setTimestamp("since", since)
+				.list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Order> getLatestOrders(Collection<Patient> patients) {
+		if (patients == null) {
+			return sessionFactory.getCurrentSession().createQuery(LATEST_ORDERS_HQL).list();
+		}
+		List<Integer> patientIds = new ArrayList<Integer>(patients.size());
+		for (Patient patient : patients) {
+			patientIds.add(patient.getPatientId());
+		}
+		return loadByIds(LATEST_ORDERS_HQL + " and o.patient.patientId in (:ids)", patientIds);
+	}
+	
+	@Override
+	public List<Concept> getConcepts(Collection<Integer> conceptIds) {
+		return loadByIds("from Concept where conceptId in (:ids)",
+				new ArrayList<Integer>(conceptIds));
+	}
+	
+	@Override
+	public List<PatientRow> getPatientRows(Date since, PatientIdentifierType identifierType,
+	        PersonAttributeType attributeType) {
+		List<Integer> ids;
+		if (since == null) {
+			@SuppressWarnings("unchecked")
+			List<Integer> unvoided = sessionFactory.getCurrentSession().createQuery(
+					"select p.patientId from Patient p where p.voided = false")
+					.list();
+			ids = unvoided;
+		} else {
+			ids = getIdsModifiedSince(PATIENT_IDS_MODIFIED_SINCE_SQL, since);
+		}
+		List<Object[]> patients = loadByIds(PATIENT_FIELDS_HQL, ids);
+		Map<Integer, Object[]> names = getFirstRowByPersonId(
+				this.<Object[]> loadByIds(PATIENT_NAMES_HQL, ids));
+		Map<Integer, Object[]> identifiers = identifierType == null
+				? Collections.<Integer, Object[]> emptyMap()
+				: getFirstRowByPersonId(this.<Object[]> loadByIds(
+						PATIENT_IDENTIFIERS_HQL, ids, "type", identifierType));
+		Map<Integer, Object[]> attributes = attributeType == null
+				? Collections.<Integer, Object[]> emptyMap()
+				: getFirstRowByPersonId(this.<Object[]> loadByIds(
+						PATIENT_ATTRIBUTES_HQL, ids, "type", attributeType));
+		
+		List<PatientRow> rows = new ArrayList<PatientRow>(patients.size());
+		for (Object[] patient : patients) {
+			Integer id = (Integer) patient[0];
+			Object[] name = names.get(id);
+			Object[] identifier = identifiers.get(id);
+			Object[] attribute = attributes.get(id);
+			rows.add(new PatientRow(id, (String) patient[1], Boolean.TRUE.equals(patient[2]),
+					(String) patient[3], (Date) patient[4],
+					name == null ? null : (String) name[1],
+					name == null ? null : (String) name[2],
+					identifier == null ? null : (String) identifier[1],
+					attribute == null ? null : (String) attribute[1]));
+		}
+		return rows;
+	}
+	
+	@Override
+	public Map<Integer, String> getPatientUuids() {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+				"select p.patientId, p.uuid from Patient p where p.voided = false")
+				.list();
+		Map<Integer, String> uuids = new LinkedHashMap<Integer, String>();
+		for (Object[] row : rows) {
+			uuids.put((Integer) row[0], (String) row[1]);
+		}
+		return uuids;
+	}
+	
+	/** Keys rows by their first column, keeping the first row for each key. */
+	private static Map<Integer, Object[]> getFirstRowByPersonId(List<Object[]> rows) {
+		Map<Integer, Object[]> first = new HashMap<Integer, Object[]>();
+		for (Object[] row : rows) {
+			if (!first.containsKey(row[0])) {
+				first.put((Integer) row[0], row);
+			}
+		}
+		return first;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<ObsRow> getObsRows(Date since, Date before) {
+		if (since == null) {
+			return sessionFactory.getCurrentSession().createQuery(
+					OBS_ROWS_HQL + ORDER_BY_ENCOUNTER)
+					.setTimestamp("before", before)
+					.list();
+		}
+		// OpenMRS doesn't set dateChanged when an encounter is created.
+		return sessionFactory.getCurrentSession().createQuery(
+				OBS_ROWS_HQL + " and (e.dateCreated >= :since or e.dateChanged >= :since)"
+				+ ORDER_BY_ENCOUNTER)
+				.setTimestamp("before", before)
+				.setTimestamp("since", since)
+				.list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<OrderRow> getLatestOrderRows() {
+		return sessionFactory.getCurrentSession().createQuery(LATEST_ORDER_ROWS_HQL).list();
+	}
+	
+	private List<Integer> getIdsModifiedSince(String sql, Date since) {
+		@SuppressWarnings("unchecked")
+		List<Number> rows = sessionFactory.getCurrentSession().createSQLQuery(sql)
+				.setTimestamp("since", since)
+				.list();
+		List<Integer> ids = new ArrayList<Integer>(rows.size());
+		for (Number row : rows) {
+			ids.add(row.intValue());
+		}
+		return ids;
+	}
+	
+	/**
+	 * Runs an HQL query with an "ids" parameter for each batch of the given IDs
+	 * and returns all the results.  Unlike the core services' getAll methods,
+	 * this only excludes voided or retired items if the query does.
+	 */
+	private <T> List<T> loadByIds(String hql, List<Integer> ids) {
+		return loadByIds(hql, ids, null, null);
+	}
+	
+	/** Like loadByIds(String, List), with one more named parameter for the query. */
+	private <T> List<T> loadByIds(String hql, List<Integer> ids, String name, Object value) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<T> results = new ArrayList<T>(ids.size());
+		for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+			List<Integer> batch = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+			Query query = sessionFactory.getCurrentSession().createQuery(hql)
+					.setParameterList("ids", batch);
+			if (name != null) {
+				query.setParameter(name, value);
+			}
+			@SuppressWarnings("unchecked")
+			List<T> items = query.list();
+			results.addAll(items);
+		}
+		return results;
+	}
+	
+	@Override
+	public <T> T runReadOnly(ProjectBuendiaService.Reader<T> reader) {
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode flushMode = session.getFlushMode();
+		boolean defaultReadOnly = session.isDefaultReadOnly();
+		session.setFlushMode(FlushMode.MANUAL);
+		session.setDefaultReadOnly(true);
+		try {
+			return reader.read();
+		}
+		finally {
+			session.setDefaultReadOnly(defaultReadOnly);
+			session.setFlushMode(flushMode);
+		}
+	}
+	
+	@Override
+	public Date getDatabaseTime() {
+		// The users table always has at least the admin user.
+		return (Date) sessionFactory.getCurrentSession().createSQLQuery(
+				"select now() from users limit 1")
+				.uniqueResult();
+	}
+}
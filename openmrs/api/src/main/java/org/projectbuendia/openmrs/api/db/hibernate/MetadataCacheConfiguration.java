@@ -0,0 +1,63 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api.db.hibernate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.RootClass;
+
+/**
+ * The Hibernate configuration that {@link MetadataCacheConfigurer} has OpenMRS
+ * build its session factory from.  Once the mappings are read, it gives each
+ * class and collection listed in the configurer its cache strategy, but only
+ * where the mapping doesn't already declare one, so that whatever OpenMRS core
+ * caches is cached the way core chose.
+ */
+public class MetadataCacheConfiguration extends Configuration {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Log log = LogFactory.getLog(MetadataCacheConfiguration.class);
+
+	@Override
+	public SessionFactory buildSessionFactory() throws HibernateException {
+		buildMappings();
+		for (String[] pair : MetadataCacheConfigurer.ENTITY_STRATEGIES) {
+			PersistentClass mapping = getClassMapping(pair[0]);
+			if (mapping == null) {
+				log.warn("No mapping to cache for " + pair[0]);
+				continue;
+			}
+			// Subclasses, such as ConceptNumeric, share the root class's region.
+			RootClass root = mapping.getRootClass();
+			if (root.getCacheConcurrencyStrategy() == null) {
+				root.setCacheConcurrencyStrategy(pair[1]);
+			}
+		}
+		for (String[] pair : MetadataCacheConfigurer.COLLECTION_STRATEGIES) {
+			Collection mapping = getCollectionMapping(pair[0]);
+			if (mapping == null) {
+				log.warn("No mapping to cache for " + pair[0]);
+				continue;
+			}
+			if (mapping.getCacheConcurrencyStrategy() == null) {
+				mapping.setCacheConcurrencyStrategy(pair[1]);
+			}
+		}
+		return super.buildSessionFactory();
+	}
+}
@@ -0,0 +1,150 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api.db.hibernate;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.TypedStringValue;
+
+/**
+ * Puts the metadata that every sync reads (concepts and their names, forms and
+ * their fields, locations, encounter types, and identifier types) in
+ * Hibernate's second-level cache, so that the Concept, Chart, Xform, and
+ * Location resources stop reloading the same rows on every request.  OpenMRS
+ * owns the session factory, so this edits its bean definition before it is
+ * created: it turns the cache on and has the factory built from a
+ * {@link MetadataCacheConfiguration}, which adds cache strategies for the
+ * classes below that core's mappings don't already cache.
+ *
+ * <p>Core's cache provider and ehcache configuration are left as they are, so
+ * core's own regions keep their settings, and the regions added here get the
+ * defaultCache settings from core's ehcache configuration.
+ *
+ * <p>These tables are changed in the admin UI, which goes through the same
+ * session factory, so nonstrict-read-write is enough: an update evicts the
+ * cached entry when it commits.  Applying a profile rewrites them with direct
+ * SQL instead, so ProfileManager evicts all the regions afterwards.  Concept
+ * datatypes can't be edited at all, so they are read-only.  The query cache
+ * stays off, because our queries are mostly over patient data, and every
+ * write to a table would invalidate all the cached queries that touch it.
+ *
+ * <p>As this is where the session factory's definition is edited, it also
+ * installs {@link QueryTimingBatcherFactory}, which times queries for the
+ * per-request statistics.
+ */
+public class MetadataCacheConfigurer implements BeanFactoryPostProcessor {
+
+	private static final Log log = LogFactory.getLog(MetadataCacheConfigurer.class);
+
+	static final String SESSION_FACTORY = "sessionFactory";
+
+	static final String NONSTRICT = "nonstrict-read-write";
+
+	static final String READ_ONLY = "read-only";
+
+	/**
+	 * Mapped classes to cache, unless core's mapping already caches them;
+	 * subclasses of Concept share the root class's region.
+	 */
+	static final String[][] ENTITY_STRATEGIES = {
+		{ "org.openmrs.Concept", NONSTRICT },
+		{ "org.openmrs.ConceptName", NONSTRICT },
+		{ "org.openmrs.ConceptAnswer", NONSTRICT },
+		{ "org.openmrs.ConceptClass", NONSTRICT },
+		{ "org.openmrs.ConceptDatatype", READ_ONLY },
+		{ "org.openmrs.Form", NONSTRICT },
+		{ "org.openmrs.FormField", NONSTRICT },
+		{ "org.openmrs.Field", NONSTRICT },
+		{ "org.openmrs.Location", NONSTRICT },
+		{ "org.openmrs.EncounterType", NONSTRICT },
+		{ "org.openmrs.PatientIdentifierType", NONSTRICT }
+	};
+
+	/** Collections to cache, by role, on the same terms; each holds the IDs of cached entities. */
+	static final String[][] COLLECTION_STRATEGIES = {
+		{ "org.openmrs.Concept.names", NONSTRICT },
+		{ "org.openmrs.Concept.answers", NONSTRICT },
+		{ "org.openmrs.Form.formFields", NONSTRICT },
+		{ "org.openmrs.Location.childLocations", NONSTRICT }
+	};
+
+	static final String[][] HIBERNATE_PROPERTIES = {
+		{ "hibernate.cache.use_second_level_cache", "true" },
+		{ "hibernate.cache.use_query_cache", "false" },
+		{ "hibernate.jdbc.factory_class", QueryTimingBatcherFactory.class.getName() }
+	};
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory factory) throws BeansException {
+		if (!factory.containsBeanDefinition(SESSION_FACTORY)) {
+			return;
+		}
+		BeanDefinition definition = factory.getBeanDefinition(SESSION_FACTORY);
+		MutablePropertyValues values = definition.getPropertyValues();
+		if (values.contains("configurationClass")) {
+			log.warn("The session factory already has a configurationClass; not caching metadata");
+		} else {
+			values.addPropertyValue("configurationClass", MetadataCacheConfiguration.class);
+		}
+		addHibernateProperties(values);
+	}
+
+	/**
+	 * Adds our settings to any hibernateProperties already in the definition,
+	 * replacing any that set the same keys, so that the cache is on and the
+	 * query cache off whatever the definition said (MetadataCacheConfigurerTest
+	 * checks the settings that result).
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addHibernateProperties(MutablePropertyValues values) {
+		PropertyValue existing = values.getPropertyValue("hibernateProperties");
+		Object value = existing == null ? null : existing.getValue();
+		if (value == null) {
+			values.addPropertyValue("hibernateProperties", toProperties(HIBERNATE_PROPERTIES));
+		} else if (value instanceof Map) {
+			// A <props> element; its keys may still be TypedStringValues.
+			Map<Object, Object> map = (Map<Object, Object>) value;
+			for (String[] pair : HIBERNATE_PROPERTIES) {
+				removeKey(map, pair[0]);
+				map.put(pair[0], pair[1]);
+			}
+		}
+	}
+
+	private static void removeKey(Map<Object, Object> map, String key) {
+		for (Iterator<Object> keys = map.keySet().iterator(); keys.hasNext();) {
+			Object k = keys.next();
+			Object name = k instanceof TypedStringValue ? ((TypedStringValue) k).getValue() : k;
+			if (key.equals(name)) {
+				keys.remove();
+			}
+		}
+	}
+
+	static Properties toProperties(String[][] pairs) {
+		Properties properties = new Properties();
+		for (String[] pair : pairs) {
+			properties.setProperty(pair[0], pair[1]);
+		}
+		return properties;
+	}
+}
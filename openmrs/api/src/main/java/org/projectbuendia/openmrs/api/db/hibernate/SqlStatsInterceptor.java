@@ -0,0 +1,78 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api.db.hibernate;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Counts the SQL statements prepared, the entities loaded, and the time spent
+ * executing queries (as measured by {@link QueryTimingBatcherFactory}) on
+ * each thread, so that the work done for one request can be told apart from the work done
+ * by other requests running at the same time (which Hibernate's own
+ * statistics can't do, as they are totals for the whole session factory).
+ * The counts only ever go up; callers take the difference between two reads.
+ * Installed as a bean in moduleApplicationContext.xml, like
+ * {@link ChangeTrackingInterceptor}.
+ */
+public class SqlStatsInterceptor extends EmptyInterceptor {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int STATEMENTS = 0;
+
+	private static final int ENTITIES_LOADED = 1;
+
+	private static final int QUERY_NANOS = 2;
+
+	private static final ThreadLocal<long[]> counts = new ThreadLocal<long[]>() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[3];
+		}
+	};
+
+	/** Returns the number of statements prepared so far on this thread. */
+	public static long getStatementCount() {
+		return counts.get()[STATEMENTS];
+	}
+
+	/** Returns the number of entities loaded so far on this thread. */
+	public static long getEntityLoadCount() {
+		return counts.get()[ENTITIES_LOADED];
+	}
+
+	/** Returns the time spent executing queries so far on this thread, in milliseconds. */
+	public static long getQueryMillis() {
+		return counts.get()[QUERY_NANOS] / 1000000;
+	}
+
+	/** Adds to the time spent executing queries on this thread. */
+	static void addQueryTime(long nanos) {
+		counts.get()[QUERY_NANOS] += nanos;
+	}
+
+	@Override
+	public String onPrepareStatement(String sql) {
+		counts.get()[STATEMENTS]++;
+		return sql;
+	}
+
+	@Override
+	public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		counts.get()[ENTITIES_LOADED]++;
+		return false;
+	}
+}
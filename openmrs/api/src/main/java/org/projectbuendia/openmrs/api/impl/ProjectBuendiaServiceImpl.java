@@ -11,7 +11,24 @@
 
 package org.projectbuendia.openmrs.api.impl;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.projectbuendia.openmrs.api.ObsRow;
+import org.projectbuendia.openmrs.api.OrderRow;
+import org.projectbuendia.openmrs.api.PatientRow;
 import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.api.db.ProjectBuendiaDAO;
 import org.apache.commons.logging.Log;
@@ -39,4 +56,86 @@ public class ProjectBuendiaServiceImpl extends BaseOpenmrsService implements Pro
     public ProjectBuendiaDAO getDao() {
 	    return dao;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<Integer, Long> getPatientCountsByLocation(PersonAttributeType assignedLocationType) {
+	    return dao.getPatientCountsByLocation(assignedLocationType);
+    }
+
+    @Override
+    public List<Patient> getAllPatients() {
+	    return dao.getAllPatients();
+    }
+
+    @Override
+    public List<Patient> getPatientsModifiedSince(Date since) {
+	    return dao.getPatientsModifiedSince(since);
+    }
+
+    @Override
+    public List<Provider> getProvidersModifiedSince(Date since) {
+	    return dao.getProvidersModifiedSince(since);
+    }
+
+    @Override
+    public List<Encounter> getEncountersVoidedSince(Date since) {
+	    return dao.getEncountersVoidedSince(since);
+    }
+
+    @Override
+    public List<Obs> getObsVoidedSince(Date since) {
+	    return dao.getObsVoidedSince(since);
+    }
+
+    @Override
+    public List<Order> getLatestOrdersByPatient(Patient patient) {
+	    return dao.getLatestOrders(Collections.singleton(patient));
+    }
+
+    @Override
+    public List<Order> getLatestOrders(Collection<Patient> patients) {
+	    return dao.getLatestOrders(patients);
+    }
+
+    @Override
+    public List<Concept> getConcepts(Collection<Integer> conceptIds) {
+	    return dao.getConcepts(conceptIds);
+    }
+
+    @Override
+    public List<PatientRow> getPatientRows(Date since, PatientIdentifierType identifierType,
+            PersonAttributeType attributeType) {
+	    return dao.getPatientRows(since, identifierType, attributeType);
+    }
+
+    @Override
+    public Map<Integer, String> getPatientUuids() {
+	    return dao.getPatientUuids();
+    }
+
+    @Override
+    public List<ObsRow> getObsRows(Date since, Date before) {
+	    return dao.getObsRows(since, before);
+    }
+
+    @Override
+    public List<OrderRow> getLatestOrderRows() {
+	    return dao.getLatestOrderRows();
+    }
+
+    @Override
+    public <T> T read(Reader<T> reader) {
+	    return dao.runReadOnly(reader);
+    }
+
+    @Override
+    public <T> T readSnapshot(final SnapshotReader<T> reader) {
+	    return dao.runReadOnly(new Reader<T>() {
+		    @Override
+		    public T read() {
+			    // In a REPEATABLE READ transaction, the first read fixes the snapshot.
+			    return reader.read(dao.getDatabaseTime().getTime());
+		    }
+	    });
+    }
+}
@@ -13,18 +13,233 @@ package org.projectbuendia.openmrs.api;
 
 import static org.junit.Assert.*;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.projectbuendia.openmrs.api.ProjectBuendiaService;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * Tests {@link ProjectBuendiaService}.
  */
 public class ProjectBuendiaServiceTest extends BaseModuleContextSensitiveTest {
 	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
 	@Test
 	public void shouldSetupContext() {
 		assertNotNull(Context.getService(ProjectBuendiaService.class));
 	}
+	
+	@Test
+	public void read_shouldLoadEntitiesReadOnlyAndRestoreTheSession() {
+		Context.clearSession();
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode flushMode = session.getFlushMode();
+		Patient patient = Context.getService(ProjectBuendiaService.class).read(
+				new ProjectBuendiaService.Reader<Patient>() {
+					
+					@Override
+					public Patient read() {
+						return Context.getPatientService().getPatient(2);
+					}
+				});
+		assertTrue(session.isReadOnly(patient));
+		assertFalse(session.isDefaultReadOnly());
+		assertEquals(flushMode, session.getFlushMode());
+	}
+	
+	@Test
+	public void readSnapshot_shouldReadOnlyAndRestoreTheSession() {
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode flushMode = session.getFlushMode();
+		final Session[] inside = new Session[1];
+		final FlushMode[] insideFlushMode = new FlushMode[1];
+		Boolean defaultReadOnly = Context.getService(ProjectBuendiaService.class).readSnapshot(
+				new ProjectBuendiaService.SnapshotReader<Boolean>() {
+					
+					@Override
+					public Boolean read(long snapshotTime) {
+						inside[0] = sessionFactory.getCurrentSession();
+						insideFlushMode[0] = inside[0].getFlushMode();
+						return inside[0].isDefaultReadOnly();
+					}
+				});
+		assertTrue(defaultReadOnly);
+		assertEquals(FlushMode.MANUAL, insideFlushMode[0]);
+		assertSame(session, inside[0]);
+		assertFalse(session.isDefaultReadOnly());
+		assertEquals(flushMode, session.getFlushMode());
+	}
+	
+	@Test
+	public void readSnapshot_shouldPassTheDatabaseTime() {
+		long before = System.currentTimeMillis();
+		Long snapshotTime = Context.getService(ProjectBuendiaService.class).readSnapshot(
+				new ProjectBuendiaService.SnapshotReader<Long>() {
+					
+					@Override
+					public Long read(long snapshotTime) {
+						return snapshotTime;
+					}
+				});
+		// The database clock may be truncated to the second.
+		assertTrue(snapshotTime >= before - 1000);
+		assertTrue(snapshotTime <= System.currentTimeMillis());
+	}
+	
+	@Test
+	public void getAllPatients_shouldLoadNamesIdentifiersAndAttributes() {
+		Context.clearSession();
+		List<Patient> patients = Context.getService(ProjectBuendiaService.class).getAllPatients();
+		assertEquals(Context.getPatientService().getAllPatients().size(), patients.size());
+		for (Patient patient : patients) {
+			assertTrue(Hibernate.isInitialized(patient.getNames()));
+			assertTrue(Hibernate.isInitialized(patient.getIdentifiers()));
+			assertTrue(Hibernate.isInitialized(patient.getAttributes()));
+		}
+	}
+	
+	@Test
+	public void getPatientsModifiedSince_shouldIncludeVoidedPatients() {
+		// 4102444800000 is 2100-01-01, after everything in the test data.
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		assertEquals(Context.getPatientService().getAllPatients(true).size(),
+				service.getPatientsModifiedSince(new Date(0)).size());
+		assertTrue(service.getPatientsModifiedSince(new Date(4102444800000L)).isEmpty());
+	}
+	
+	@Test
+	public void getProvidersModifiedSince_shouldIncludeRetiredProviders() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		assertEquals(Context.getProviderService().getAllProviders(true).size(),
+				service.getProvidersModifiedSince(new Date(0)).size());
+		assertTrue(service.getProvidersModifiedSince(new Date(4102444800000L)).isEmpty());
+	}
+	
+	@Test
+	public void getEncountersVoidedSince_shouldReturnVoidedEncountersAndObs() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		// Allow for the database truncating times to the second.
+		Date start = new Date(System.currentTimeMillis() - 1000);
+		Encounter voidedEncounter = Context.getEncounterService().getEncounter(3);
+		Context.getEncounterService().voidEncounter(voidedEncounter, "test");
+		Obs voidedObs = Context.getEncounterService().getEncounter(4).getObs().iterator().next();
+		Context.getObsService().voidObs(voidedObs, "test");
+		
+		assertEquals(1, service.getEncountersVoidedSince(start).size());
+		assertEquals(voidedEncounter, service.getEncountersVoidedSince(start).get(0));
+		// Observations voided along with their encounter are left out.
+		assertEquals(1, service.getObsVoidedSince(start).size());
+		assertEquals(voidedObs, service.getObsVoidedSince(start).get(0));
+	}
+	
+	@Test
+	public void getLatestOrdersByPatient_shouldOmitRevisedOrders() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		Patient patient = Context.getPatientService().getPatient(2);
+		List<Order> allOrders = Context.getOrderService().getAllOrdersByPatient(patient);
+		List<Order> latestOrders = service.getLatestOrdersByPatient(patient);
+		assertFalse(latestOrders.isEmpty());
+		for (Order order : allOrders) {
+			Order previous = order.getPreviousOrder();
+			if (previous != null && !order.isVoided()) {
+				assertFalse(latestOrders.contains(previous));
+			}
+		}
+		for (Order order : latestOrders) {
+			assertTrue(allOrders.contains(order));
+			assertFalse(order.isVoided());
+		}
+		assertEquals(latestOrders.size(),
+				service.getLatestOrders(Collections.singleton(patient)).size());
+	}
+	
+	@Test
+	public void getConcepts_shouldReturnTheConceptsWithTheGivenIds() {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Concept concept : Context.getConceptService().getAllConcepts()) {
+			ids.add(concept.getConceptId());
+		}
+		ids.add(Integer.MAX_VALUE);  // no such concept
+		List<Concept> concepts = Context.getService(ProjectBuendiaService.class).getConcepts(ids);
+		assertEquals(ids.size() - 1, concepts.size());
+		for (Concept concept : concepts) {
+			assertTrue(ids.contains(concept.getConceptId()));
+		}
+	}
+	
+	@Test
+	public void getPatientRows_shouldMatchThePatients() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		List<Patient> patients = Context.getPatientService().getAllPatients();
+		List<PatientRow> rows = service.getPatientRows(null, null, null);
+		assertEquals(patients.size(), rows.size());
+		for (PatientRow row : rows) {
+			Patient patient = Context.getPatientService().getPatient(row.patientId);
+			assertEquals(patient.getUuid(), row.uuid);
+			assertFalse(row.voided);
+			assertEquals(patient.getGivenName(), row.givenName);
+			assertEquals(patient.getFamilyName(), row.familyName);
+			assertNull(row.identifier);
+		}
+		assertEquals(service.getPatientsModifiedSince(new Date(0)).size(),
+				service.getPatientRows(new Date(0), null, null).size());
+	}
+	
+	@Test
+	public void getPatientUuids_shouldMatchThePatients() {
+		Map<Integer, String> uuids = Context.getService(ProjectBuendiaService.class).getPatientUuids();
+		List<Patient> patients = Context.getPatientService().getAllPatients();
+		assertEquals(patients.size(), uuids.size());
+		for (Patient patient : patients) {
+			assertEquals(patient.getUuid(), uuids.get(patient.getPatientId()));
+		}
+	}
+	
+	@Test
+	public void getObsRows_shouldIncludeEveryEncounterOfUnvoidedPatients() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		Set<String> encounterUuids = new HashSet<String>();
+		for (ObsRow row : service.getObsRows(null, new Date(4102444800000L))) {
+			encounterUuids.add(row.encounterUuid);
+		}
+		for (Patient patient : Context.getPatientService().getAllPatients()) {
+			for (Encounter encounter : Context.getEncounterService().getEncountersByPatient(patient)) {
+				assertTrue(encounterUuids.contains(encounter.getUuid()));
+			}
+		}
+		assertTrue(service.getObsRows(new Date(4102444800000L), new Date(4102444800000L)).isEmpty());
+	}
+	
+	@Test
+	public void getLatestOrderRows_shouldMatchTheLatestOrders() {
+		ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+		Set<String> uuids = new HashSet<String>();
+		for (Order order : service.getLatestOrders(null)) {
+			uuids.add(order.getUuid());
+		}
+		Set<String> rowUuids = new HashSet<String>();
+		for (OrderRow row : service.getLatestOrderRows()) {
+			rowUuids.add(row.uuid);
+		}
+		assertEquals(uuids, rowUuids);
+	}
 }
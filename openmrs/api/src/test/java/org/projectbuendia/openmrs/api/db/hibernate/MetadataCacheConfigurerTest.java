@@ -0,0 +1,112 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.api.db.hibernate;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Settings;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+/**
+ * Tests that {@link MetadataCacheConfigurer} takes effect in the session
+ * factory that OpenMRS builds.
+ */
+public class MetadataCacheConfigurerTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	@Test
+	public void shouldTurnOnTheSecondLevelCacheButNotTheQueryCache() {
+		Settings settings = ((SessionFactoryImplementor) sessionFactory).getSettings();
+		assertTrue(settings.isSecondLevelCacheEnabled());
+		assertFalse(settings.isQueryCacheEnabled());
+		assertTrue(((SessionFactoryImplementor) sessionFactory)
+				.getEntityPersister(Concept.class.getName()).hasCache());
+	}
+
+	@Test
+	public void postProcessBeanFactory_shouldLeaveCoresCacheProviderAlone() {
+		Properties hibernateProperties = new Properties();
+		hibernateProperties.setProperty("hibernate.cache.provider_class", "core.Provider");
+		hibernateProperties.setProperty("net.sf.ehcache.configurationResourceName", "/core.xml");
+		RootBeanDefinition definition = new RootBeanDefinition(Object.class);
+		definition.getPropertyValues().addPropertyValue("hibernateProperties", hibernateProperties);
+		DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+		factory.registerBeanDefinition(MetadataCacheConfigurer.SESSION_FACTORY, definition);
+		
+		new MetadataCacheConfigurer().postProcessBeanFactory(factory);
+		
+		MutablePropertyValues values = definition.getPropertyValues();
+		assertEquals("core.Provider", hibernateProperties.get("hibernate.cache.provider_class"));
+		assertEquals("/core.xml", hibernateProperties.get("net.sf.ehcache.configurationResourceName"));
+		assertEquals("true", hibernateProperties.get("hibernate.cache.use_second_level_cache"));
+		// Strategies are added by the configuration, only where core has none.
+		assertFalse(values.contains("entityCacheStrategies"));
+		assertFalse(values.contains("collectionCacheStrategies"));
+		assertEquals(MetadataCacheConfiguration.class,
+				values.getPropertyValue("configurationClass").getValue());
+	}
+	
+	@Test
+	public void getConcept_shouldHitTheSecondLevelCache() {
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean enabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		try {
+			assertNotNull(Context.getConceptService().getConcept(3));
+			Context.flushSession();
+			Context.clearSession();
+
+			long hits = statistics.getSecondLevelCacheHitCount();
+			assertNotNull(Context.getConceptService().getConcept(3));
+			assertTrue(statistics.getSecondLevelCacheHitCount() > hits);
+		}
+		finally {
+			statistics.setStatisticsEnabled(enabled);
+		}
+	}
+
+	@Test
+	public void evictEntityRegions_shouldMakeTheNextLookupMiss() {
+		Statistics statistics = sessionFactory.getStatistics();
+		boolean enabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+		try {
+			assertNotNull(Context.getConceptService().getConcept(3));
+			Context.flushSession();
+			Context.clearSession();
+
+			// As ProfileManager does after applying a profile.
+			sessionFactory.getCache().evictEntityRegions();
+			sessionFactory.getCache().evictCollectionRegions();
+			long hits = statistics.getSecondLevelCacheHitCount();
+			assertNotNull(Context.getConceptService().getConcept(3));
+			assertEquals(hits, statistics.getSecondLevelCacheHitCount());
+		}
+		finally {
+			statistics.setStatisticsEnabled(enabled);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts patient IDs of the kinds that wards actually use ("KAI/0123",
+ * "12-034", "A1b") with {@link Utils#alphanumericComparator}, which is how
+ * the patient list and the data export order their rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class UtilsBenchmark {
+    @Param({"100", "1000"})
+    public int count;
+
+    @Param("42")
+    public long seed;
+
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(seed);
+        ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    ids[i] = String.format("KAI/%04d", random.nextInt(10000));
+                    break;
+                case 1:
+                    ids[i] = random.nextInt(100) + "-" + random.nextInt(1000);
+                    break;
+                default:
+                    ids[i] = (char) ('A' + random.nextInt(26)) + Integer.toString(random.nextInt(100))
+                            + (char) ('a' + random.nextInt(26));
+            }
+        }
+    }
+
+    @Benchmark
+    public String[] sortIds() {
+        String[] sorted = ids.clone();
+        Arrays.sort(sorted, Utils.alphanumericComparator);
+        return sorted;
+    }
+}
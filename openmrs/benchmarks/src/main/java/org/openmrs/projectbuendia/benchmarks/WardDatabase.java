@@ -0,0 +1,77 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.benchmarks;
+
+import org.openmrs.Form;
+import org.openmrs.api.context.Context;
+import org.openmrs.projectbuendia.webservices.rest.WardGenerator;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.test.context.TestContextManager;
+
+/**
+ * An in-memory OpenMRS database (H2, starting from the OpenMRS standard test
+ * data) filled by {@link WardGenerator}, so runs with the same parameters
+ * are comparable.
+ *
+ * <p>This reuses the set-up code of {@link BaseModuleContextSensitiveTest},
+ * which knows how to start Spring and Hibernate against H2; the "test" is
+ * prepared by hand instead of by JUnit.  Like {@link Context} itself, the
+ * session and the authenticated user belong to the thread that calls
+ * {@link #start}, so benchmarks that use this must run in that thread.
+ */
+public class WardDatabase extends BaseModuleContextSensitiveTest {
+    private static final int ORDERS_PER_PATIENT = 2;
+
+    private static WardDatabase instance;
+
+    private WardGenerator ward;
+
+    private WardDatabase() {
+    }
+
+    /**
+     * Starts the database and fills it, unless that has already happened in
+     * this JVM (the Spring context can only be started once per JVM).
+     * @param patients the number of patients in the ward
+     * @param encountersPerPatient the number of encounters for each patient
+     * @param obsPerEncounter the number of observations in each encounter
+     * @param seed the seed for the random choices of names and values
+     */
+    public static synchronized WardDatabase start(
+            int patients, int encountersPerPatient, int obsPerEncounter, long seed)
+            throws Exception {
+        if (instance == null) {
+            WardDatabase database = new WardDatabase();
+            new TestContextManager(WardDatabase.class).prepareTestInstance(database);
+            Context.openSession();
+            database.baseSetupWithStandardDataAndAuthentication();
+            database.ward = new WardGenerator(seed, obsPerEncounter);
+            database.ward.addPatients(
+                    patients, encountersPerPatient, obsPerEncounter, ORDERS_PER_PATIENT);
+            instance = database;
+        }
+        return instance;
+    }
+
+    /** Returns the chart form, which is also listed in the chart global property. */
+    public Form getChart() {
+        return ward.getChart();
+    }
+
+    /**
+     * Discards everything that Hibernate has loaded, so that the next piece
+     * of work starts with an empty session, like a new request in the server.
+     */
+    public void clearSession() {
+        Context.clearSession();
+    }
+}
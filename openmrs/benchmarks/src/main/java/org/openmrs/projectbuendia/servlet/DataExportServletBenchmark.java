@@ -0,0 +1,77 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.servlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.projectbuendia.benchmarks.WardDatabase;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports a whole generated ward as CSV through {@link DataExportServlet},
+ * from the database queries to the last cell.  The CSV is written to memory,
+ * so network and disk are not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DataExportServletBenchmark {
+    @Param({"100"})
+    public int patients;
+
+    @Param({"40"})
+    public int encountersPerPatient;
+
+    @Param({"15"})
+    public int obsPerEncounter;
+
+    @Param("42")
+    public long seed;
+
+    private WardDatabase database;
+    private DataExportServlet servlet;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = WardDatabase.start(patients, encountersPerPatient, obsPerEncounter, seed);
+        servlet = new DataExportServlet();
+    }
+
+    @Setup(Level.Invocation)
+    public void startRequest() {
+        database.clearSession();
+    }
+
+    @Benchmark
+    public int export() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        servlet.doGet(new MockHttpServletRequest("GET", "/moduleServlet/projectbuendia/exportData"),
+                response);
+        return response.getContentAsByteArray().length;
+    }
+}
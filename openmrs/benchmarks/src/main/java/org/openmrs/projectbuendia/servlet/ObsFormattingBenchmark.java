@@ -0,0 +1,102 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.servlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.Concept;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.Obs;
+import org.openmrs.hl7.HL7Constants;
+import org.openmrs.projectbuendia.VisitObsValue;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats a million observations for the data export spreadsheet, the way
+ * {@link DataExportServlet} does for every cell.  The observations are built
+ * in memory and share a few concepts, as in a real export, so this measures
+ * the value dispatch and formatting alone, without the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ObsFormattingBenchmark {
+    @Param("1000000")
+    public int count;
+
+    @Param("42")
+    public long seed;
+
+    private Obs[] observations;
+
+    @Setup
+    public void setUp() {
+        // Boolean values are left out: Obs.getValueAsBoolean() looks up the
+        // true and false concepts, which needs a running OpenMRS.
+        String[] hl7Types = {
+                HL7Constants.HL7_NUMERIC, HL7Constants.HL7_CODED, HL7Constants.HL7_TEXT,
+                HL7Constants.HL7_DATE, HL7Constants.HL7_DATETIME};
+        Concept[] concepts = new Concept[hl7Types.length * 4];
+        for (int i = 0; i < concepts.length; i++) {
+            ConceptDatatype datatype = new ConceptDatatype(i % hl7Types.length + 1);
+            datatype.setHl7Abbreviation(hl7Types[i % hl7Types.length]);
+            concepts[i] = new Concept(i + 1);
+            concepts[i].setDatatype(datatype);
+        }
+
+        Random random = new Random(seed);
+        long now = 1420070400000L;  // 2015-01-01 UTC
+        observations = new Obs[count];
+        for (int i = 0; i < count; i++) {
+            Concept concept = concepts[random.nextInt(concepts.length)];
+            Obs obs = new Obs();
+            obs.setConcept(concept);
+            switch (VisitObsValue.getValueType(concept)) {
+                case NUMERIC:
+                    obs.setValueNumeric(Math.round(random.nextDouble() * 1000) / 10.0);
+                    break;
+                case CODED:
+                    obs.setValueCoded(concepts[random.nextInt(concepts.length)]);
+                    break;
+                case TEXT:
+                    obs.setValueText("Note " + random.nextInt(10000));
+                    break;
+                default:
+                    obs.setValueDatetime(new Date(now - (long) (random.nextDouble() * 1e10)));
+            }
+            observations[i] = obs;
+        }
+    }
+
+    @Benchmark
+    public void formatValues(Blackhole blackhole) {
+        for (Obs obs : observations) {
+            blackhole.consume(VisitObsValue.visit(obs, DataExportServlet.OBS_VALUE_FORMATTER));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.projectbuendia.benchmarks.WardDatabase;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the encounters of every patient in a generated ward through
+ * {@link PatientEncountersResource}, as a tablet does when it first syncs
+ * ("full") and when it syncs again with nothing new ("incremental").
+ * Hibernate's session is cleared before each fetch, as it would be between
+ * requests in the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PatientEncountersResourceBenchmark {
+    @Param({"100"})
+    public int patients;
+
+    @Param({"40"})
+    public int encountersPerPatient;
+
+    @Param({"15"})
+    public int obsPerEncounter;
+
+    @Param("42")
+    public long seed;
+
+    private WardDatabase database;
+    private PatientEncountersResource resource;
+    private String incrementalSince;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = WardDatabase.start(patients, encountersPerPatient, obsPerEncounter, seed);
+        resource = new PatientEncountersResource();
+        incrementalSince = Long.toString(System.currentTimeMillis());
+    }
+
+    @Setup(Level.Invocation)
+    public void startRequest() {
+        database.clearSession();
+    }
+
+    @Benchmark
+    public SimpleObject fullFetch() throws Exception {
+        return resource.search(newContext(null));
+    }
+
+    @Benchmark
+    public SimpleObject incrementalFetch() throws Exception {
+        return resource.search(newContext(incrementalSince));
+    }
+
+    private RequestContext newContext(String sm) {
+        MockHttpServletRequest request = new MockHttpServletRequest(
+                "GET", "/ws/rest/v1/projectbuendia/patientencounters");
+        if (sm != null) {
+            request.setParameter("sm", sm);
+        }
+        RequestContext context = new RequestContext();
+        context.setRequest(request);
+        return context;
+    }
+}
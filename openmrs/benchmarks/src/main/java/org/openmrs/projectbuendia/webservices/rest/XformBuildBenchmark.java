@@ -0,0 +1,78 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Form;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.xforms.buendia.BuendiaXformBuilderEx;
+import org.openmrs.module.xforms.buendia.FormData;
+import org.openmrs.projectbuendia.benchmarks.WardDatabase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the XForm for a generated chart form with
+ * {@link BuendiaXformBuilderEx}, as {@link XformResource} does for every
+ * form a tablet downloads.  The form has one question per generated concept,
+ * in groups, so its size follows the obsPerEncounter parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XformBuildBenchmark {
+    @Param({"10"})
+    public int patients;
+
+    @Param({"1"})
+    public int encountersPerPatient;
+
+    @Param({"15", "60"})
+    public int obsPerEncounter;
+
+    @Param("42")
+    public long seed;
+
+    private WardDatabase database;
+    private int formId;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = WardDatabase.start(patients, encountersPerPatient, obsPerEncounter, seed);
+        formId = database.getChart().getId();
+    }
+
+    @Setup(Level.Invocation)
+    public void startRequest() {
+        database.clearSession();
+    }
+
+    @Benchmark
+    public FormData buildXform() throws Exception {
+        Form form = Context.getFormService().getForm(formId);
+        return BuendiaXformBuilderEx.buildXform(form, new BuendiaXformCustomizer());
+    }
+}
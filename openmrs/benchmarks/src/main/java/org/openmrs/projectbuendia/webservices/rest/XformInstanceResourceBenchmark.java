@@ -0,0 +1,104 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completes a submitted XForm instance with
+ * {@link XformInstanceResource#completeXform(SimpleObject)}, which parses,
+ * rewrites, and reserializes the XML of every observation form a tablet
+ * submits.  The instance has the layout of the instances that tablets send,
+ * with the answers in groups; it needs no database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XformInstanceResourceBenchmark {
+    private static final int ANSWERS_PER_GROUP = 6;
+
+    @Param({"40"})
+    public int answers;
+
+    @Param("42")
+    public long seed;
+
+    private String xml;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<form id=\"4\" name=\"Ward chart\" version=\"1\"")
+                .append(" uuid=\"9e17ff6f-e3c8-4661-86d3-09a96169bedc\">\n")
+                .append("<header><enterer>1^</enterer><date_entered>2015-01-01</date_entered>")
+                .append("<session/><uid/></header>\n")
+                .append("<patient><patient.patient_id/></patient>\n")
+                .append("<encounter>")
+                .append("<encounter.encounter_datetime openmrs_table=\"encounter\"")
+                .append(" openmrs_attribute=\"encounter_datetime\">")
+                .append("2015-01-01T09:30:00.000+00:00</encounter.encounter_datetime>")
+                .append("<encounter.location_id openmrs_table=\"encounter\"")
+                .append(" openmrs_attribute=\"location_id\">1</encounter.location_id>")
+                .append("<encounter.provider_id openmrs_table=\"encounter\"")
+                .append(" openmrs_attribute=\"provider_id\"")
+                .append(" provider_id_type=\"PROVIDER.ID\">1</encounter.provider_id>")
+                .append("</encounter>\n");
+        for (int i = 0; i < answers; i++) {
+            if (i % ANSWERS_PER_GROUP == 0) {
+                if (i > 0) {
+                    builder.append("</group_").append(i / ANSWERS_PER_GROUP - 1).append(">\n");
+                }
+                builder.append("<group_").append(i / ANSWERS_PER_GROUP).append(">\n");
+            }
+            int conceptId = 5000 + i;
+            builder.append("<question_").append(i)
+                    .append(" openmrs_concept=\"").append(conceptId)
+                    .append("^WARD QUESTION ").append(i).append("^99DCT\" openmrs_datatype=\"NM\">")
+                    .append("<date/><time/><value>")
+                    .append(Math.round(random.nextDouble() * 1000) / 10.0)
+                    .append("</value></question_").append(i).append(">\n");
+        }
+        if (answers > 0) {
+            builder.append("</group_").append((answers - 1) / ANSWERS_PER_GROUP).append(">\n");
+        }
+        xml = builder.append("</form>\n").toString();
+    }
+
+    @Benchmark
+    public String completeXform() throws Exception {
+        SimpleObject post = new SimpleObject();
+        post.add("xml", xml);
+        post.add("patient_id", 2);
+        post.add("enterer_id", 1);
+        post.add("date_entered", "20150101T093000.000Z");
+        return XformInstanceResource.completeXform(post);
+    }
+}
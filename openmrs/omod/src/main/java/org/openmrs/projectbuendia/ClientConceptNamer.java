@@ -15,9 +15,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
 import org.springframework.util.ObjectUtils;
 
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A class to get a String representing a concept in the client. See the wiki
@@ -39,12 +42,34 @@ public class ClientConceptNamer {
             .setLanguage("en")
             .build();
 
+    /**
+     * Names already chosen, keyed by concept ID and locale.  The whole table
+     * is replaced (not cleared) when any concept or concept name changes, so
+     * that a lookup that was in progress during the change can't put a stale
+     * name into the new table.
+     */
+    private static volatile ConcurrentHashMap<NameKey, String> memo = new ConcurrentHashMap<>();
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses, Concept.class, ConceptName.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
     private final Locale locale;
 
     public ClientConceptNamer(Locale locale) {
         this.locale = locale;
     }
 
+    public Locale getLocale() {
+        return locale;
+    }
+
     /**
      * Gets the best available concept name string to display in the client.
      * The configured locale is checked for a preferred name string, first
@@ -68,10 +93,33 @@ public class ClientConceptNamer {
      *     <li>en
      * </ol>
      *
+     * The result for a saved concept is remembered until a concept or concept
+     * name is next changed, or a profile is applied.
+     *
      * @param concept the concept to get a name for
      * @return a String for the client with the best match we can get for that locale
      */
     public String getClientName(Concept concept) {
+        Integer id = concept.getId();
+        if (id == null) {  // not saved yet, so it can't be memoized
+            return chooseClientName(concept);
+        }
+        ConcurrentHashMap<NameKey, String> names = memo;
+        NameKey key = new NameKey(id, locale);
+        String name = names.get(key);
+        if (name == null) {
+            name = chooseClientName(concept);
+            names.put(key, name);
+        }
+        return name;
+    }
+
+    /** Forgets all memoized names. */
+    public static void invalidate() {
+        memo = new ConcurrentHashMap<>();
+    }
+
+    private String chooseClientName(Concept concept) {
         String variant = locale.getVariant();
         Locale.Builder builder = new Locale.Builder().setLocale(locale);
         if (!VARIANT.equals(variant)) {
@@ -128,4 +176,26 @@ public class ClientConceptNamer {
         }
         return null;
     }
+
+    private static class NameKey {
+        final int conceptId;
+        final Locale locale;
+
+        NameKey(int conceptId, Locale locale) {
+            this.conceptId = conceptId;
+            this.locale = locale;
+        }
+
+        @Override public boolean equals(Object other) {
+            if (!(other instanceof NameKey)) {
+                return false;
+            }
+            NameKey o = (NameKey) other;
+            return conceptId == o.conceptId && locale.equals(o.locale);
+        }
+
+        @Override public int hashCode() {
+            return conceptId * 31 + locale.hashCode();
+        }
+    }
 }
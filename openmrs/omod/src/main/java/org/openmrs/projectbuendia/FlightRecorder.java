@@ -0,0 +1,177 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits custom Java Flight Recorder events, so that a recording taken on a
+ * server (e.g. with "jcmd [pid] JFR.start") shows what the server was doing
+ * in our terms: which REST requests, form submissions, and exports were
+ * running and how long their parts took.  We build for Java 7, which has no
+ * jdk.jfr package, so the event types are defined at run time through
+ * jdk.jfr.EventFactory, found by reflection.  On a JVM without it (before
+ * Java 11), every event is a no-op.  When no recording is running, an event
+ * costs little more than the reflective calls to begin and commit it.
+ */
+public class FlightRecorder {
+    private static final Log log = LogFactory.getLog(FlightRecorder.class);
+
+    // The jdk.jfr methods we call, or null if jdk.jfr is unavailable.
+    private static final Method NEW_EVENT;
+    private static final Method BEGIN;
+    private static final Method SET;
+    private static final Method COMMIT;
+
+    static {
+        Method newEvent = null, begin = null, set = null, commit = null;
+        try {
+            newEvent = Class.forName("jdk.jfr.EventFactory").getMethod("newEvent");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            begin = event.getMethod("begin");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        } catch (ReflectiveOperationException e) {
+            // Running on a JVM without jdk.jfr; all events are no-ops.
+        }
+        NEW_EVENT = newEvent;
+        BEGIN = begin;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    /** An event for each REST request: fields are resource, method, result size, failed. */
+    public static final EventType REST_REQUEST = new EventType(
+            "org.projectbuendia.RestRequest", "REST Request", "REST",
+            String.class, "resource", String.class, "method",
+            int.class, "resultSize", boolean.class, "failed");
+
+    /**
+     * An event for each submitted xform: fields are the form ID, the time to
+     * parse and fix up the form instance, and the time the xforms module took
+     * to transform it to HL7 and save it, in milliseconds.
+     */
+    public static final EventType XFORM_PROCESSING = new EventType(
+            "org.projectbuendia.XformProcessing", "Xform Processing", "Xforms",
+            String.class, "formId", long.class, "prepareMillis", long.class, "processMillis");
+
+    /**
+     * An event for each CSV export: fields are rows and bytes written; the
+     * event's duration is the time the export took.
+     */
+    public static final EventType DATA_EXPORT = new EventType(
+            "org.projectbuendia.DataExport", "Data Export", "Export",
+            long.class, "rows", long.class, "bytes");
+
+    private FlightRecorder() {
+    }
+
+    /** A kind of event, with a fixed list of fields. */
+    public static class EventType {
+        private final Object factory;  // a jdk.jfr.EventFactory, or null
+
+        /**
+         * @param typesAndNames alternating field types (primitives or String)
+         *     and field names
+         */
+        EventType(String name, String label, String category, Object... typesAndNames) {
+            Object factory = null;
+            try {
+                if (NEW_EVENT != null) {
+                    factory = createFactory(name, label, category, typesAndNames);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Could not define flight recorder event " + name, e);
+            }
+            this.factory = factory;
+        }
+
+        /** Starts timing an event, to be filled in and committed when done. */
+        public Event begin() {
+            if (factory == null) {
+                return Event.NONE;
+            }
+            try {
+                Object event = NEW_EVENT.invoke(factory);
+                BEGIN.invoke(event);
+                return new Event(event);
+            } catch (ReflectiveOperationException e) {
+                return Event.NONE;
+            }
+        }
+    }
+
+    /** One event in progress. */
+    public static class Event {
+        static final Event NONE = new Event(null);
+
+        private final Object event;  // a jdk.jfr.Event, or null
+
+        private Event(Object event) {
+            this.event = event;
+        }
+
+        /** Sets the field with the given index, in the order the fields were defined. */
+        public Event set(int index, Object value) {
+            if (event != null) {
+                try {
+                    SET.invoke(event, index, value);
+                } catch (ReflectiveOperationException e) { }
+            }
+            return this;
+        }
+
+        /** Ends the event and writes it to any running recording. */
+        public void commit() {
+            if (event != null) {
+                try {
+                    COMMIT.invoke(event);
+                } catch (ReflectiveOperationException e) { }
+            }
+        }
+    }
+
+    private static Object createFactory(String name, String label, String category,
+            Object... typesAndNames) throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+        Class<?> nameType = Class.forName("jdk.jfr.Name");
+        Class<?> labelType = Class.forName("jdk.jfr.Label");
+        Class<?> categoryType = Class.forName("jdk.jfr.Category");
+        Class<?> stackTraceType = Class.forName("jdk.jfr.StackTrace");
+        Constructor<?> newField = Class.forName("jdk.jfr.ValueDescriptor")
+                .getConstructor(Class.class, String.class, List.class);
+
+        List<Object> annotations = Arrays.asList(
+                newAnnotation.newInstance(nameType, name),
+                newAnnotation.newInstance(labelType, label),
+                newAnnotation.newInstance(categoryType, new String[] {"Buendia", category}),
+                // Stack traces would mostly show our reflective calls, and cost time.
+                newAnnotation.newInstance(stackTraceType, false));
+        List<Object> fields = new ArrayList<>();
+        for (int i = 0; i < typesAndNames.length; i += 2) {
+            String fieldName = (String) typesAndNames[i + 1];
+            fields.add(newField.newInstance(typesAndNames[i], fieldName, Collections.singletonList(
+                    newAnnotation.newInstance(labelType, fieldName))));
+        }
+        return Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class)
+                .invoke(null, annotations, fields);
+    }
+}
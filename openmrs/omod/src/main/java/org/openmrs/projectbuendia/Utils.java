@@ -24,6 +24,7 @@ import java.util.regex.Pattern;
 
 public class Utils {
     private static final TimeZone UTC = TimeZone.getTimeZone("Etc/UTC");
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
     /** ISO 8601 format for a complete date and time in UTC. */
     public static final DateFormat FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
     static {
@@ -144,7 +145,78 @@ public class Utils {
 
     /** Formats a datetime as an ISO 8601 string in the UTC timezone. */
     public static String toIso8601(Date dateTime) {
-        return FORMAT.format(dateTime);
+        return appendIso8601(new StringBuilder(24), dateTime.getTime()).toString();
+    }
+
+    /**
+     * Appends a datetime in the same format as {@link #FORMAT}.  Unlike FORMAT,
+     * this is safe to call from multiple threads and allocates nothing itself.
+     */
+    public static StringBuilder appendIso8601(StringBuilder sb, long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int msOfDay = (int) (millis - days * MILLIS_PER_DAY);
+        appendDate(sb, days).append('T');
+        appendTime(sb, msOfDay).append('.');
+        return appendPadded(sb, msOfDay % 1000, 3).append('Z');
+    }
+
+    /**
+     * Appends a datetime in the same format as {@link #SPREADSHEET_FORMAT}.
+     * Unlike SPREADSHEET_FORMAT, this is thread-safe.
+     */
+    public static StringBuilder appendSpreadsheetDateTime(StringBuilder sb, long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        appendDate(sb, days).append(' ');
+        return appendTime(sb, (int) (millis - days * MILLIS_PER_DAY));
+    }
+
+    /**
+     * Appends a date in the same format as {@link #YYYYMMDD_FORMAT}, in the
+     * default timezone.  Unlike YYYYMMDD_FORMAT, this is thread-safe.
+     */
+    public static StringBuilder appendYyyyMmDd(StringBuilder sb, long millis) {
+        millis += TimeZone.getDefault().getOffset(millis);
+        return appendDate(sb, floorDiv(millis, MILLIS_PER_DAY));
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    /** Appends the proleptic Gregorian date of a day counted from 1970-01-01. */
+    private static StringBuilder appendDate(StringBuilder sb, long epochDay) {
+        // See http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        appendPadded(sb, year, 4).append('-');
+        appendPadded(sb, month, 2).append('-');
+        return appendPadded(sb, day, 2);
+    }
+
+    /** Appends HH:mm:ss for a time of day given in milliseconds. */
+    private static StringBuilder appendTime(StringBuilder sb, int msOfDay) {
+        appendPadded(sb, msOfDay / 3600000, 2).append(':');
+        appendPadded(sb, msOfDay / 60000 % 60, 2).append(':');
+        return appendPadded(sb, msOfDay / 1000 % 60, 2);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder sb, long value, int width) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < width; i++) {
+            sb.append('0');
+        }
+        return sb.append(value);
     }
 
     /** Parses a yyyy-MM-dd date or throws InvalidObjectDataException. */
@@ -17,9 +17,24 @@ import org.openmrs.Obs;
 import org.openmrs.hl7.HL7Constants;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Visitor design pattern for observation values of various types. */
 public class VisitObsValue {
+    /** The kinds of observation value that a visitor can receive. */
+    public enum ValueType {
+        BOOLEAN, CODED, NUMERIC, TEXT, DATE, DATETIME
+    }
+
+    /**
+     * Value types resolved so far, keyed by concept datatype ID.  The HL7
+     * abbreviations of the OpenMRS datatypes never change, so this is never
+     * invalidated.
+     */
+    private static final Map<Integer, ValueType> valueTypesByDatatypeId =
+            new ConcurrentHashMap<>();
+
     /**
      * Visitor design pattern interface for observation values.
      * @param <T>
@@ -46,23 +61,63 @@ public class VisitObsValue {
 
     /** Applies a visitor to an observation (we can't retrofit to Obs). */
     public static <T> T visit(Obs obs, ObsValueVisitor<T> visitor) {
-        Concept concept = obs.getConcept();
+        switch (getValueType(obs.getConcept())) {
+            case BOOLEAN:
+                return visitor.visitBoolean(obs.getValueAsBoolean());
+            case CODED:
+                return visitor.visitCoded(obs.getValueCoded());
+            case NUMERIC:
+                return visitor.visitNumeric(obs.getValueNumeric());
+            case TEXT:
+                return visitor.visitText(obs.getValueText());
+            case DATE:
+                return visitor.visitDate(obs.getValueDate());
+            case DATETIME:
+                return visitor.visitDateTime(obs.getValueDatetime());
+        }
+        throw new AssertionError();
+    }
+
+    /** Gets the kind of value held by observations of the given concept. */
+    public static ValueType getValueType(Concept concept) {
         ConceptDatatype dataType = concept.getDatatype();
-        String hl7Type = dataType.getHl7Abbreviation();
+        return getValueType(dataType.getId(), dataType.getHl7Abbreviation(), concept);
+    }
+
+    /**
+     * Gets the kind of value for a concept datatype given by its ID and HL7
+     * abbreviation, as read by a projection query without loading the concept.
+     */
+    public static ValueType getValueType(Integer datatypeId, String hl7Type) {
+        return getValueType(datatypeId, hl7Type, null);
+    }
+
+    private static ValueType getValueType(Integer datatypeId, String hl7Type, Concept concept) {
+        ValueType type = datatypeId == null ? null : valueTypesByDatatypeId.get(datatypeId);
+        if (type == null) {
+            type = toValueType(hl7Type, concept);
+            if (datatypeId != null) {
+                valueTypesByDatatypeId.put(datatypeId, type);
+            }
+        }
+        return type;
+    }
+
+    private static ValueType toValueType(String hl7Type, Concept concept) {
         switch (hl7Type) {
             case HL7Constants.HL7_BOOLEAN:
-                return visitor.visitBoolean(obs.getValueAsBoolean());
+                return ValueType.BOOLEAN;
             case HL7Constants.HL7_CODED: // deliberate fall through
             case HL7Constants.HL7_CODED_WITH_EXCEPTIONS:
-                return visitor.visitCoded(obs.getValueCoded());
+                return ValueType.CODED;
             case HL7Constants.HL7_NUMERIC:
-                return visitor.visitNumeric(obs.getValueNumeric());
+                return ValueType.NUMERIC;
             case HL7Constants.HL7_TEXT:
-                return visitor.visitText(obs.getValueText());
+                return ValueType.TEXT;
             case HL7Constants.HL7_DATE:
-                return visitor.visitDate(obs.getValueDate());
+                return ValueType.DATE;
             case HL7Constants.HL7_DATETIME:
-                return visitor.visitDateTime(obs.getValueDatetime());
+                return ValueType.DATETIME;
             default:
                 throw new IllegalArgumentException("Unexpected HL7 type: " + hl7Type + " for concept " + concept);
         }
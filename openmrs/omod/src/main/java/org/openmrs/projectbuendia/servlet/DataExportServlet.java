@@ -15,8 +15,6 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
-import org.openmrs.Form;
-import org.openmrs.FormField;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
@@ -25,16 +23,21 @@ import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.xforms.util.XformsUtil;
 import org.openmrs.projectbuendia.ClientConceptNamer;
+import org.openmrs.projectbuendia.FlightRecorder;
 import org.openmrs.projectbuendia.Utils;
 import org.openmrs.projectbuendia.VisitObsValue;
-import org.openmrs.projectbuendia.webservices.rest.ChartResource;
-import org.openmrs.util.FormUtil;
+import org.openmrs.projectbuendia.webservices.rest.ChartStructure;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -47,8 +50,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 /** A servlet that generates a CSV dump of all the patient data. */
 public class DataExportServlet extends HttpServlet {
@@ -88,6 +89,46 @@ public class DataExportServlet extends HttpServlet {
     private static final int COLUMNS_PER_OBS = 3;
     private static final ClientConceptNamer NAMER = new ClientConceptNamer(Locale.ENGLISH);
 
+    // VisibleForTesting
+    /**
+     * Formats non-coded observation values for the spreadsheet, with an empty
+     * string for a missing value.  Stateless, so it is shared by all requests.
+     */
+    static final VisitObsValue.ObsValueVisitor<String> OBS_VALUE_FORMATTER =
+            new VisitObsValue.ObsValueVisitor<String>() {
+                @Override
+                public String visitCoded(Concept value) {
+                    return value == null ? "" : value.getUuid();
+                }
+
+                @Override
+                public String visitNumeric(Double value) {
+                    return value == null ? "" : Double.toString(value);
+                }
+
+                @Override
+                public String visitBoolean(Boolean value) {
+                    return value == null ? "" : Boolean.toString(value);
+                }
+
+                @Override
+                public String visitText(String value) {
+                    return value == null ? "" : value;
+                }
+
+                @Override
+                public String visitDate(Date d) {
+                    return d == null ? "" : Utils.appendYyyyMmDd(
+                            new StringBuilder(10), d.getTime()).toString();
+                }
+
+                @Override
+                public String visitDateTime(Date d) {
+                    return d == null ? "" : Utils.appendSpreadsheetDateTime(
+                            new StringBuilder(19), d.getTime()).toString();
+                }
+            };
+
     /** Indexes a fixed set of concepts in sorted UUID order. */
     private static class FixedSortedConceptIndexer {
         final Concept[] concepts;
@@ -117,12 +158,16 @@ public class DataExportServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        CSVPrinter printer = new CSVPrinter(response.getWriter(), CSVFormat.EXCEL.withDelimiter(','));
-
         //check for authenticated users
         if (!XformsUtil.isAuthenticated(request, response, null)) {
             return;
         }
+        // Write through our own encoder, so that the bytes sent can be counted.
+        CountingOutputStream stream = new CountingOutputStream(response.getOutputStream());
+        Writer writer = new OutputStreamWriter(stream, response.getCharacterEncoding());
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.EXCEL.withDelimiter(','));
+        FlightRecorder.Event event = FlightRecorder.DATA_EXPORT.begin();
+        long rows = 0;
 
         Date now = new Date();
         DateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss");
@@ -144,15 +189,9 @@ public class DataExportServlet extends HttpServlet {
 
         // Order in Xform/chart is not good as stuff changes every time we change xform
         // So instead we will use UUID order, but use the Chart form to use the concepts to display.
-        Set<Concept> questionConcepts = new HashSet<>();
-        for (Form form : ChartResource.getCharts(Context.getFormService())) {
-            TreeMap<Integer, TreeSet<FormField>> formStructure = FormUtil.getFormStructure(form);
-            for (FormField groupField : formStructure.get(0)) {
-                for (FormField fieldInGroup : formStructure.get(groupField.getId())) {
-                    questionConcepts.add(fieldInGroup.getField().getConcept());
-                }
-            }
-        }
+        Set<Concept> questionConcepts = new HashSet<>(
+                Context.getService(ProjectBuendiaService.class).getConcepts(
+                        ChartStructure.get().getGroupedConceptIds()));
         FixedSortedConceptIndexer indexer = new FixedSortedConceptIndexer(questionConcepts);
 
         // Write English headers
@@ -166,11 +205,13 @@ public class DataExportServlet extends HttpServlet {
             for (Encounter encounter : encounters) {
                 values[0] = patient.getUuid();
                 values[1] = patient.getPatientIdentifier("MSF");
-                values[2] = Utils.YYYYMMDD_FORMAT.format(patient.getBirthdate());
+                values[2] = Utils.appendYyyyMmDd(
+                        new StringBuilder(10), patient.getBirthdate().getTime()).toString();
                 values[3] = encounter.getUuid();
                 values[4] = encounter.getEncounterDatetime().getTime();
                 values[5] = Utils.toIso8601(encounter.getEncounterDatetime());
-                values[6] = Utils.SPREADSHEET_FORMAT.format(encounter.getEncounterDatetime());
+                values[6] = Utils.appendSpreadsheetDateTime(
+                        new StringBuilder(19), encounter.getEncounterDatetime().getTime()).toString();
                 Arrays.fill(values, FIXED_HEADERS.length, FIXED_HEADERS.length + indexer.size() * COLUMNS_PER_OBS, "");
                 for (Obs obs : encounter.getAllObs()) {
                     Integer index = indexer.getIndex(obs.getConcept());
@@ -182,92 +223,30 @@ public class DataExportServlet extends HttpServlet {
                     // name, the OpenMRS ID, and the UUID of the concept; otherwise all
                     // three columns contain the formatted value.
                     final int valueColumn = FIXED_HEADERS.length + index * COLUMNS_PER_OBS;
-                    VisitObsValue.visit(obs, new VisitObsValue.ObsValueVisitor<Void>() {
-                        @Override
-                        public Void visitCoded(Concept value) {
-                            if (value == null || value.getUuid() == null || value.getUuid().isEmpty()) {
-                                values[valueColumn] = "";
-                                values[valueColumn + 1] = "";
-                                values[valueColumn + 2] = "";
-                            } else {
-                                values[valueColumn] = NAMER.getClientName(value);
-                                values[valueColumn + 1] = value.getId();
-                                values[valueColumn + 2] = value.getUuid();
-                            }
-                            return null;
-                        }
-
-                        @Override
-                        public Void visitNumeric(Double value) {
-                            String s;
-                            if (value == null) {
-                                s = "";
-                            } else {
-                                s = Double.toString(value);
-                            }
-                            values[valueColumn] = s;
-                            values[valueColumn + 1] = s;
-                            values[valueColumn + 2] = s;
-                            return null;
+                    if (VisitObsValue.getValueType(obs.getConcept()) == VisitObsValue.ValueType.CODED) {
+                        Concept value = obs.getValueCoded();
+                        if (value == null || value.getUuid() == null || value.getUuid().isEmpty()) {
+                            values[valueColumn] = "";
+                            values[valueColumn + 1] = "";
+                            values[valueColumn + 2] = "";
+                        } else {
+                            values[valueColumn] = NAMER.getClientName(value);
+                            values[valueColumn + 1] = value.getId();
+                            values[valueColumn + 2] = value.getUuid();
                         }
-
-                        @Override
-                        public Void visitBoolean(Boolean value) {
-                            String s;
-                            if (value == null) {
-                                s = "";
-                            } else {
-                                s = Boolean.toString(value);
-                            }
-                            values[valueColumn] = s;
-                            values[valueColumn + 1] = s;
-                            values[valueColumn + 2] = s;
-                            return null;
-                        }
-
-                        @Override
-                        public Void visitText(String value) {
-                            if (value == null) {
-                                value = "";
-                            }
-                            values[valueColumn] = value;
-                            values[valueColumn + 1] = value;
-                            values[valueColumn + 2] = value;
-                            return null;
-                        }
-
-                        @Override
-                        public Void visitDate(Date d) {
-                            String value;
-                            if (d == null) {
-                                value = "";
-                            } else {
-                                value = Utils.YYYYMMDD_FORMAT.format(d);
-                            }
-                            values[valueColumn] = value;
-                            values[valueColumn + 1] = value;
-                            values[valueColumn + 2] = value;
-                            return null;
-                        }
-
-                        @Override
-                        public Void visitDateTime(Date d) {
-                            String value;
-                            if (d == null) {
-                                value = "";
-                            } else {
-                                value = Utils.SPREADSHEET_FORMAT.format(d);
-                            }
-                            values[valueColumn] = value;
-                            values[valueColumn + 1] = value;
-                            values[valueColumn + 2] = value;
-                            return null;
-                        }
-                    });
+                    } else {
+                        String value = VisitObsValue.visit(obs, OBS_VALUE_FORMATTER);
+                        values[valueColumn] = value;
+                        values[valueColumn + 1] = value;
+                        values[valueColumn + 2] = value;
+                    }
                 }
                 printer.printRecord(values);
+                rows++;
             }
         }
+        printer.flush();
+        event.set(0, rows).set(1, stream.count).commit();
     }
 
     private void writeHeaders(CSVPrinter printer, FixedSortedConceptIndexer indexer) throws IOException {
@@ -285,4 +264,23 @@ public class DataExportServlet extends HttpServlet {
         }
         printer.println();
     }
+
+    /** Counts the encoded bytes written, for the export's flight recorder event. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
 }
@@ -0,0 +1,166 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.servlet;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.Field;
+import org.openmrs.Form;
+import org.openmrs.FormField;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.Privilege;
+import org.openmrs.Provider;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+import org.projectbuendia.openmrs.webservices.rest.RestController;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Gzips responses from the Buendia REST API for clients that accept gzip.
+ * Responses for metadata that changes rarely (charts, concepts, xforms, and
+ * locations) are also kept in compressed form, so that repeated requests for
+ * them are answered without running the resource or recompressing anything.
+ * The kept responses are all discarded when any of that metadata changes.
+ *
+ * <p>Kept responses are only served to authenticated users, and each user
+ * gets only the responses kept for that same user, so a cache hit never hands
+ * out a response that the resource would have refused.  Any change to users,
+ * roles, or privileges discards them all.  This filter is declared by this
+ * module, which depends on the REST module, so it runs after the REST
+ * module's filter has authenticated the request; if it ever runs first,
+ * requests simply aren't answered from the cache.
+ */
+public class GzipFilter implements Filter {
+    /** Matches the URIs of the metadata collections whose responses are kept. */
+    private static final Pattern CACHEABLE_PATH = Pattern.compile(
+            ".*/rest/" + RestController.REST_VERSION_1_AND_NAMESPACE
+                    + "/(chart|concept|xform|location)(/[^/]*)?");
+
+    /** Bounds memory use if clients ask for many different URLs. */
+    private static final int MAX_ENTRIES = 64;
+
+    /** Incremented whenever anything that affects a kept response changes. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                // Xforms include the list of providers and their names.  Person
+                // and PersonName are left out, as they match every patient write.
+                if (ChangeNotifier.anyOf(changedClasses,
+                        Concept.class, ConceptName.class, ConceptAnswer.class,
+                        ConceptDatatype.class, Form.class, FormField.class, Field.class,
+                        GlobalProperty.class, Location.class, Provider.class,
+                        User.class, Role.class, Privilege.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private static class Entry {
+        final long version;
+        final String contentType;
+        final byte[] gzipped;
+
+        Entry(long version, String contentType, byte[] gzipped) {
+            this.version = version;
+            this.contentType = contentType;
+            this.gzipped = gzipped;
+        }
+    }
+
+    @Override public void init(FilterConfig config) { }
+
+    @Override public void destroy() { }
+
+    @Override public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        // Both the gzipped and the identity responses depend on this header.
+        response.addHeader("Vary", "Accept-Encoding");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = getCacheKey(request);
+        long version = currentVersion.get();
+        if (key != null) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                response.setContentType(entry.contentType);
+                response.setHeader("Content-Encoding", "gzip");
+                response.setContentLength(entry.gzipped.length);
+                response.getOutputStream().write(entry.gzipped);
+                return;
+            }
+        }
+
+        GzipResponseWrapper wrapper = new GzipResponseWrapper(response, key != null);
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            wrapper.finish();
+        }
+
+        byte[] gzipped = wrapper.getCompressedCopy();
+        if (key != null && gzipped != null && wrapper.getStatus() == HttpServletResponse.SC_OK) {
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            entries.put(key, new Entry(version, wrapper.getContentType(), gzipped));
+        }
+    }
+
+    /** Discards all the kept responses. */
+    public static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+
+    /** Returns the key for keeping this request's response, or null if it shouldn't be kept. */
+    private static String getCacheKey(HttpServletRequest request) {
+        User user = Context.getAuthenticatedUser();
+        if (user == null
+                || !"GET".equals(request.getMethod())
+                || !CACHEABLE_PATH.matcher(request.getRequestURI()).matches()
+                // Patient counts per location change with every admission.
+                || request.getParameter("counts") != null) {
+            return null;
+        }
+        // Concept names in xforms are chosen according to the user's locale.
+        return user.getUserId() + " " + request.getRequestURI() + "?" + request.getQueryString()
+                + " " + request.getHeader("Accept") + " " + Context.getLocale();
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response that gzips whatever is written to it.  If a copy is requested,
+ * the compressed bytes are also kept so that they can be cached and sent
+ * again later without recompressing.
+ */
+class GzipResponseWrapper extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream copy;
+    private int status = SC_OK;
+    private GZIPOutputStream gzip;
+    private ServletOutputStream stream;
+    private PrintWriter writer;
+
+    /**
+     * @param response the response to write compressed data to
+     * @param keepCopy whether to keep a copy of the compressed data
+     */
+    GzipResponseWrapper(HttpServletResponse response, boolean keepCopy) {
+        super(response);
+        copy = keepCopy ? new ByteArrayOutputStream() : null;
+    }
+
+    @Override public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (stream == null) {
+            final GZIPOutputStream out = startGzip();
+            stream = new ServletOutputStream() {
+                @Override public void write(int b) throws IOException {
+                    out.write(b);
+                }
+
+                @Override public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+            };
+        }
+        return stream;
+    }
+
+    @Override public PrintWriter getWriter() throws IOException {
+        if (stream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(startGzip(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private GZIPOutputStream startGzip() throws IOException {
+        setHeader("Content-Encoding", "gzip");
+        final OutputStream out = super.getOutputStream();
+        gzip = new GZIPOutputStream(copy == null ? out : new OutputStream() {
+            @Override public void write(int b) throws IOException {
+                out.write(b);
+                copy.write(b);
+            }
+
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                copy.write(b, off, len);
+            }
+        });
+        return gzip;
+    }
+
+    // The length set by the wrapped servlet is the uncompressed length, so
+    // drop it however it is set.
+    @Override public void setContentLength(int length) { }
+
+    @Override public void setHeader(String name, String value) {
+        if (!isContentLength(name)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override public void addHeader(String name, String value) {
+        if (!isContentLength(name)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override public void setIntHeader(String name, int value) {
+        if (!isContentLength(name)) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override public void addIntHeader(String name, int value) {
+        if (!isContentLength(name)) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private static boolean isContentLength(String name) {
+        return "Content-Length".equalsIgnoreCase(name);
+    }
+
+    @Override public void setStatus(int status) {
+        super.setStatus(status);
+        this.status = status;
+    }
+
+    @Override public void sendError(int status) throws IOException {
+        super.sendError(status);
+        this.status = status;
+    }
+
+    @Override public void sendError(int status, String message) throws IOException {
+        super.sendError(status, message);
+        this.status = status;
+    }
+
+    @Override public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (gzip != null) {
+            gzip.flush();
+        }
+        super.flushBuffer();
+    }
+
+    /** Finishes the compressed output; call this once the servlet is done. */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (gzip != null) {
+            gzip.finish();
+        }
+    }
+
+    /** Returns the HTTP status that was set. */
+    int getStatus() {
+        return status;
+    }
+
+    /** Returns the compressed bytes written, or null if nothing was written or kept. */
+    byte[] getCompressedCopy() {
+        return copy == null || gzip == null ? null : copy.toByteArray();
+    }
+}
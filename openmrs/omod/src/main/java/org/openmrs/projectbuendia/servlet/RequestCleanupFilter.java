@@ -0,0 +1,43 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.servlet;
+
+import org.openmrs.projectbuendia.webservices.rest.RequestLogger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Clears the per-thread state that RequestLogger keeps for the REST requests
+ * in progress once each HTTP request is done, however it ended, so that a
+ * request that never logged its "end" line can't affect the next request
+ * handled by the same pooled thread.
+ */
+public class RequestCleanupFilter implements Filter {
+    @Override public void init(FilterConfig config) { }
+
+    @Override public void destroy() { }
+
+    @Override public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestLogger.reset();
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.openmrs.OpenmrsObject;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
@@ -28,6 +29,7 @@ import org.openmrs.module.webservices.rest.web.resource.api.Searchable;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.projectbuendia.Utils;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 
 /**
  * Abstract superclass for resources whose REST API only supports read
@@ -91,7 +93,8 @@ public abstract class AbstractReadOnlyResource<T extends OpenmrsObject>
      *         items that match the search parameters, in the same form as that
      *         returned by {@link #retrieve(String, RequestContext)}
      *     <li>"snapshotTime": a timestamp in ISO 8601 UTC format, indicating
-     *         the server clock time at which the results were retrieved; for
+     *         the database clock time at which the results were retrieved
+     *         (the search runs in a single consistent database snapshot); for
      *         resources that support incremental fetch, clients can pass in
      *         this snapshotTime as the "sm" query parameter of the next request
      *         to get just the data added or changed since this request
@@ -102,11 +105,15 @@ public abstract class AbstractReadOnlyResource<T extends OpenmrsObject>
      * @throws ResponseException if anything goes wrong
      */
     @Override
-    public SimpleObject search(RequestContext context) throws ResponseException {
+    public SimpleObject search(final RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "search");
-            long snapshotTime = System.currentTimeMillis();
-            SimpleObject result = searchInner(context, snapshotTime);
+            SimpleObject result = Context.getService(ProjectBuendiaService.class).readSnapshot(
+                    new ProjectBuendiaService.SnapshotReader<SimpleObject>() {
+                        @Override public SimpleObject read(long snapshotTime) {
+                            return searchInner(context, snapshotTime);
+                        }
+                    });
             logger.reply(context, this, "search", result);
             return result;
         } catch (Exception e) {
@@ -125,14 +132,23 @@ public abstract class AbstractReadOnlyResource<T extends OpenmrsObject>
      */
     private SimpleObject searchInner(RequestContext context, long snapshotTime)
             throws ResponseException {
+        SimpleObject response = new SimpleObject();
+        response.put("results", searchToJson(context, snapshotTime));
+        response.put("snapshotTime", Utils.toIso8601(new Date(snapshotTime)));
+        return response;
+    }
+
+    /**
+     * Produces the JSON items for a search.  By default, this converts each
+     * item returned by {@link #searchImpl(RequestContext, long)}; subclasses
+     * can override it to build the JSON from something lighter than entities.
+     */
+    protected List<SimpleObject> searchToJson(RequestContext context, long snapshotTime) {
         List<SimpleObject> results = new ArrayList<>();
         for (T item : searchImpl(context, snapshotTime)) {
             results.add(convertToJson(item, context, snapshotTime));
         }
-        SimpleObject response = new SimpleObject();
-        response.put("results", results);
-        response.put("snapshotTime", Utils.toIso8601(new Date(snapshotTime)));
-        return response;
+        return results;
     }
 
     /**
@@ -149,10 +165,15 @@ public abstract class AbstractReadOnlyResource<T extends OpenmrsObject>
      * @throws ResponseException if anything goes wrong
      */
     @Override
-    public Object retrieve(String uuid, RequestContext context) throws ResponseException {
+    public Object retrieve(final String uuid, final RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "retrieve", uuid);
-            Object result = retrieveInner(uuid, context, System.currentTimeMillis());
+            Object result = Context.getService(ProjectBuendiaService.class).read(
+                    new ProjectBuendiaService.Reader<Object>() {
+                        @Override public Object read() {
+                            return retrieveInner(uuid, context, System.currentTimeMillis());
+                        }
+                    });
             logger.reply(context, this, "retrieve", result);
             return result;
         } catch (Exception e) {
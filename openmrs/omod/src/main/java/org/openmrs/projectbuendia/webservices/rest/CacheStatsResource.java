@@ -0,0 +1,113 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.Listable;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.projectbuendia.openmrs.webservices.rest.RestController;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Read-only resource reporting how well Hibernate's second-level cache of
+ * metadata (set up by MetadataCacheConfigurer in the API module) is working.
+ * The counts are totals since the module started, as Hibernate's statistics
+ * are only switched on then (see {@link RequestStats#enable()}).
+ *
+ * <p>GET /cachestats returns:
+ * <pre>
+ * {
+ *   "hits": 51234, "misses": 311, "puts": 311,  // totals for all regions
+ *   "results": [
+ *     {
+ *       "region": "org.openmrs.Concept",
+ *       "hits": 20871, "misses": 104, "puts": 104,
+ *       "elements": 104,  // entries held in memory
+ *       "bytes": 81920  // estimated memory used by the entries
+ *     },
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ */
+@Resource(name = RestController.REST_VERSION_1_AND_NAMESPACE + "/cachestats",
+    supportedClass = SecondLevelCacheStatistics.class, supportedOpenmrsVersions = "1.10.*,1.11.*")
+public class CacheStatsResource implements Listable {
+    static final RequestLogger logger = RequestLogger.LOGGER;
+
+    @Override
+    public SimpleObject getAll(RequestContext context) throws ResponseException {
+        try {
+            logger.request(context, this, "getAll");
+            SimpleObject result = getAllInner();
+            logger.reply(context, this, "getAll", result);
+            return result;
+        } catch (Exception e) {
+            logger.error(context, this, "getAll", e);
+            throw e;
+        }
+    }
+
+    private SimpleObject getAllInner() {
+        List<SimpleObject> regions = new ArrayList<>();
+        long hits = 0, misses = 0, puts = 0;
+        List<SessionFactory> factories = Context.getRegisteredComponents(SessionFactory.class);
+        if (!factories.isEmpty()) {
+            Statistics statistics = factories.get(0).getStatistics();
+            for (String name : new TreeSet<>(Arrays.asList(
+                    statistics.getSecondLevelCacheRegionNames()))) {
+                SecondLevelCacheStatistics region = statistics.getSecondLevelCacheStatistics(name);
+                if (region == null) continue;
+                SimpleObject json = new SimpleObject();
+                json.put("region", name);
+                json.put("hits", region.getHitCount());
+                json.put("misses", region.getMissCount());
+                json.put("puts", region.getPutCount());
+                json.put("elements", region.getElementCountInMemory());
+                json.put("bytes", region.getSizeInMemory());
+                regions.add(json);
+                hits += region.getHitCount();
+                misses += region.getMissCount();
+                puts += region.getPutCount();
+            }
+        }
+        SimpleObject result = new SimpleObject();
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("puts", puts);
+        result.put("results", regions);
+        return result;
+    }
+
+    @Override
+    public String getUri(Object instance) {
+        Resource res = getClass().getAnnotation(Resource.class);
+        return RestConstants.URI_PREFIX + res.name();
+    }
+
+    @Override
+    public List<Representation> getAvailableRepresentations() {
+        return Arrays.asList(Representation.DEFAULT);
+    }
+}
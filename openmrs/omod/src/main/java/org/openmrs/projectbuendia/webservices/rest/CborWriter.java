@@ -0,0 +1,177 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.projectbuendia.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the objects that our resources return (maps, lists, strings, numbers,
+ * and booleans) in CBOR (RFC 7049), a binary equivalent of JSON that is
+ * smaller and faster to parse.
+ *
+ * <p>Repeated strings, such as the concept UUIDs that appear in every
+ * observation, are written in full only the first time; after that they are
+ * written as a small integer index, following the "stringref" extension
+ * (http://cbor.schmorp.de/stringref).  The whole output is therefore wrapped
+ * in tag 256, and each back-reference is tag 25 applied to an index.
+ *
+ * <p>A writer keeps its string table, so use a new one for each response.
+ */
+public class CborWriter {
+    /** The media type for CBOR, for use in Accept and Content-Type headers. */
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int TAG_STRINGREF = 25;
+    private static final int TAG_STRINGREF_NAMESPACE = 256;
+
+    private static final int SIMPLE_FALSE = 20;
+    private static final int SIMPLE_TRUE = 21;
+    private static final int SIMPLE_NULL = 22;
+    private static final int FLOAT_64 = 27;
+
+    private final OutputStream out;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+    public CborWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /** Writes a complete CBOR document containing the given value. */
+    public void writeDocument(Object value) throws IOException {
+        writeHead(MAJOR_TAG, TAG_STRINGREF_NAMESPACE);
+        write(value);
+        out.flush();
+    }
+
+    private void write(Object value) throws IOException {
+        if (value == null) {
+            out.write(MAJOR_SIMPLE << 5 | SIMPLE_NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            out.write(MAJOR_SIMPLE << 5 | ((Boolean) value ? SIMPLE_TRUE : SIMPLE_FALSE));
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeInteger(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.write(MAJOR_SIMPLE << 5 | FLOAT_64);
+            writeBigEndian(Double.doubleToLongBits(((Number) value).doubleValue()), 8);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeHead(MAJOR_MAP, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(String.valueOf(entry.getKey()));
+                write(entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> items = (Collection<?>) value;
+            writeHead(MAJOR_ARRAY, items.size());
+            for (Object item : items) {
+                write(item);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] items = (Object[]) value;
+            writeHead(MAJOR_ARRAY, items.length);
+            for (Object item : items) {
+                write(item);
+            }
+        } else if (value instanceof Date) {
+            writeString(Utils.toIso8601((Date) value));
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeInteger(long value) throws IOException {
+        if (value >= 0) {
+            writeHead(MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer index = stringIndexes.get(value);
+        if (index != null) {
+            writeHead(MAJOR_TAG, TAG_STRINGREF);
+            writeHead(MAJOR_UNSIGNED, index);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        if (isWorthReferencing(bytes.length, stringIndexes.size())) {
+            stringIndexes.put(value, stringIndexes.size());
+        }
+        writeHead(MAJOR_TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The stringref extension only assigns an index to strings that are
+     * longer than a reference to them would be; the decoder applies the same
+     * rule, so the indexes on both sides agree.
+     */
+    static boolean isWorthReferencing(int length, long nextIndex) {
+        if (nextIndex < 24) {
+            return length >= 3;
+        } else if (nextIndex < 0x100) {
+            return length >= 4;
+        } else if (nextIndex < 0x10000) {
+            return length >= 5;
+        } else if (nextIndex < 0x100000000L) {
+            return length >= 7;
+        }
+        return length >= 11;
+    }
+
+    /** Writes the initial byte(s) of a data item: major type and argument. */
+    private void writeHead(int major, long argument) throws IOException {
+        if (argument < 24) {
+            out.write(major << 5 | (int) argument);
+        } else if (argument < 0x100) {
+            out.write(major << 5 | 24);
+            writeBigEndian(argument, 1);
+        } else if (argument < 0x10000) {
+            out.write(major << 5 | 25);
+            writeBigEndian(argument, 2);
+        } else if (argument < 0x100000000L) {
+            out.write(major << 5 | 26);
+            writeBigEndian(argument, 4);
+        } else {
+            out.write(major << 5 | 27);
+            writeBigEndian(argument, 8);
+        }
+    }
+
+    private void writeBigEndian(long value, int numBytes) throws IOException {
+        for (int shift = (numBytes - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Order;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.Person;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonName;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process notifications of changes to patients, encounters, orders, and
+ * locations, which let clients long-poll for changes instead of re-fetching
+ * every collection on a timer.  Each change is numbered with a sequence number; a client passes
+ * the last sequence number it has seen and is woken as soon as there is a
+ * newer change, or when its timeout expires.
+ *
+ * <p>The response tells the client the latest sequence number for each kind
+ * of data, so it only needs to re-fetch (with "sm") the collections whose
+ * numbers have advanced.  Changes are published by a {@link ChangeNotifier}
+ * listener after each commit, so xform submissions and changes made in the
+ * admin UI are reported as well as those made through the REST API.
+ * Sequence numbers restart from zero when the server restarts; the "epoch"
+ * field changes when that happens, and a client that is waiting for a
+ * sequence number from before the restart is answered at once.
+ */
+public class ChangeFeed {
+    /** The kinds of data whose changes are reported. */
+    public enum Topic {
+        PATIENTS, ENCOUNTERS, ORDERS, LOCATIONS;
+
+        String getKey() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final long EPOCH = System.currentTimeMillis();
+    private static final Object lock = new Object();
+    private static long seq = 0;  // guarded by lock
+    private static final Map<Topic, Long> lastSeqs = new EnumMap<>(Topic.class);  // guarded by lock
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                Set<Topic> topics = EnumSet.noneOf(Topic.class);
+                // Patient is a subclass of Person, so this covers patients too.
+                if (ChangeNotifier.anyOf(changedClasses, Person.class, PersonName.class,
+                        PersonAttribute.class, PatientIdentifier.class)) {
+                    topics.add(Topic.PATIENTS);
+                }
+                if (ChangeNotifier.anyOf(changedClasses, Encounter.class, Obs.class)) {
+                    topics.add(Topic.ENCOUNTERS);
+                }
+                if (ChangeNotifier.anyOf(changedClasses, Order.class)) {
+                    topics.add(Topic.ORDERS);
+                }
+                if (ChangeNotifier.anyOf(changedClasses, Location.class)) {
+                    topics.add(Topic.LOCATIONS);
+                }
+                if (!topics.isEmpty()) {
+                    publish(topics);
+                }
+            }
+        });
+    }
+
+    private ChangeFeed() {
+    }
+
+    /** Records a change of the given kinds and wakes up all waiting clients. */
+    static void publish(Set<Topic> topics) {
+        synchronized (lock) {
+            seq++;
+            for (Topic topic : topics) {
+                lastSeqs.put(topic, seq);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until there is a change with a sequence number greater than
+     * sinceSeq, or until the timeout expires, and then returns a
+     * {@link SimpleObject} with these fields:
+     * <ul>
+     *     <li>"epoch": a number that is the same until the server restarts
+     *     <li>"seq": the sequence number of the latest change
+     *     <li>"changes": a map from topic names ("patients", "encounters",
+     *         "orders", "locations") to the sequence number of the latest
+     *         change of that kind; topics with no changes are omitted
+     * </ul>
+     * There is no wait if the epoch is given and is not the current one, or if
+     * sinceSeq is ahead of the current sequence number, as both mean that
+     * the client's sequence number is from before the server restarted.
+     *
+     * @param epoch the "epoch" from the client's previous response, or null
+     */
+    public static SimpleObject await(Long epoch, long sinceSeq, long timeoutMillis) {
+        if (epoch != null && epoch != EPOCH) {
+            sinceSeq = -1;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        SimpleObject result = new SimpleObject();
+        SimpleObject changes = new SimpleObject();
+        synchronized (lock) {
+            long remaining = timeoutMillis;
+            while (seq == sinceSeq && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            result.put("seq", seq);
+            for (Map.Entry<Topic, Long> entry : lastSeqs.entrySet()) {
+                changes.put(entry.getKey().getKey(), entry.getValue());
+            }
+        }
+        result.put("epoch", EPOCH);
+        result.put("changes", changes);
+        return result;
+    }
+}
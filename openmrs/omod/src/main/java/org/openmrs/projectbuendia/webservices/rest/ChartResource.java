@@ -11,9 +11,7 @@
 
 package org.openmrs.projectbuendia.webservices.rest;
 
-import org.openmrs.Concept;
 import org.openmrs.Form;
-import org.openmrs.FormField;
 import org.openmrs.api.FormService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -21,13 +19,10 @@ import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
-import org.openmrs.util.FormUtil;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * REST resource for charts. These are stored as OpenMRS forms, but that's
@@ -90,26 +85,15 @@ public class ChartResource extends AbstractReadOnlyResource<Form> {
         if (context.getRepresentation() != Representation.FULL) {
             return;
         }
+        ChartStructure.Chart chart = ChartStructure.get().getChart(form.getUuid());
+        if (chart == null) {  // a form that isn't listed as a chart
+            chart = ChartStructure.describe(form);
+        }
         List<SimpleObject> groups = new ArrayList<>();
-        TreeMap<Integer, TreeSet<FormField>> formStructure = FormUtil.getFormStructure(form);
-        for (FormField groupField : formStructure.get(0)) {
-            Concept groupConcept = groupField.getField().getConcept();
-            if (groupConcept == null) {
-                throw new ConfigurationException("Chart %s has non-concept top-level field %s",
-                        form.getUuid(), groupField.getField().getName());
-            }
+        for (ChartStructure.Group chartGroup : chart.getGroups()) {
             SimpleObject group = new SimpleObject();
-            group.put("uuid", groupConcept.getUuid());
-            List<String> groupFieldConceptIds = new ArrayList<>();
-            for (FormField fieldInGroup : formStructure.get(groupField.getId())) {
-                Concept fieldConcept = fieldInGroup.getField().getConcept();
-                if (fieldConcept == null) {
-                    throw new ConfigurationException("Chart %s has non-concept subfield %s",
-                            form.getUuid(), fieldInGroup.getField().getName());
-                }
-                groupFieldConceptIds.add(fieldConcept.getUuid());
-            }
-            group.put(CONCEPTS, groupFieldConceptIds);
+            group.put("uuid", chartGroup.uuid);
+            group.put(CONCEPTS, chartGroup.conceptUuids);
             groups.add(group);
         }
         json.put(GROUPS, groups);
@@ -124,9 +108,17 @@ public class ChartResource extends AbstractReadOnlyResource<Form> {
      */
     @Override
     protected Iterable<Form> searchImpl(RequestContext context, long snapshotTime) {
-        return getCharts(formService);
+        List<Form> charts = new ArrayList<>();
+        for (ChartStructure.Chart chart : ChartStructure.get().getCharts()) {
+            charts.add(formService.getForm(chart.formId));
+        }
+        return charts;
     }
 
+    /**
+     * Loads the forms listed in the "projectbuendia.chartUuids" global
+     * property.  Most callers should use {@link ChartStructure} instead.
+     */
     public static List<Form> getCharts(FormService formService) {
         List<Form> charts = new ArrayList<>();
         String[] uuids = Context.getAdministrationService()
@@ -0,0 +1,257 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.Field;
+import org.openmrs.Form;
+import org.openmrs.FormField;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.FormUtil;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable snapshot of the charts listed in the "projectbuendia.chartUuids"
+ * global property: for each chart, its groups and the concepts in each group.
+ * The current snapshot is rebuilt lazily, only after that global property or
+ * a form, field, or concept has changed, or a profile has been applied (which
+ * rewrites the forms with direct SQL; see ProfileManager), so that the chart,
+ * concept, and export paths don't have to walk the form structure on every
+ * request.
+ */
+public class ChartStructure {
+    /** One top-level group of fields in a chart. */
+    public static class Group {
+        public final String uuid;  // UUID of the concept representing the group
+        public final List<String> conceptUuids;
+        public final List<Integer> conceptIds;  // IDs of the same concepts, in the same order
+
+        Group(String uuid, List<String> conceptUuids, List<Integer> conceptIds) {
+            this.uuid = uuid;
+            this.conceptUuids = Collections.unmodifiableList(conceptUuids);
+            this.conceptIds = Collections.unmodifiableList(conceptIds);
+        }
+    }
+
+    /** One chart form. */
+    public static class Chart {
+        public final int formId;
+        public final String uuid;
+        public final String version;
+        private final List<Group> groups;
+        private final String error;  // why the groups could not be determined
+
+        Chart(Form form, List<Group> groups, String error) {
+            formId = form.getId();
+            uuid = form.getUuid();
+            version = form.getVersion();
+            this.groups = groups == null ? null : Collections.unmodifiableList(groups);
+            this.error = error;
+        }
+
+        /**
+         * Returns the groups in the chart.
+         * @throws ConfigurationException if the chart has a field that is
+         *     not associated with a concept
+         */
+        public List<Group> getGroups() {
+            if (error != null) {
+                throw new ConfigurationException(error);
+            }
+            return groups;
+        }
+    }
+
+    /** Invalidates the current snapshot when the list of chart UUIDs changes. */
+    public static final GlobalPropertyListener CHART_UUIDS_LISTENER = new GlobalPropertyListener() {
+        @Override public boolean supportsPropertyName(String propertyName) {
+            return GlobalProperties.CHART_UUIDS.equals(propertyName);
+        }
+
+        @Override public void globalPropertyChanged(GlobalProperty newValue) {
+            invalidate();
+        }
+
+        @Override public void globalPropertyDeleted(String propertyName) {
+            invalidate();
+        }
+    };
+
+    /** Incremented whenever the charts or the concepts in them change. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Object buildLock = new Object();
+    private static volatile ChartStructure current;
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses, Form.class, FormField.class,
+                        Field.class, Concept.class, ConceptAnswer.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private final long version;
+    private final List<Chart> charts;
+    private final Map<String, Chart> chartsByUuid;
+    private final Set<Integer> conceptIds;
+
+    private ChartStructure(long version, List<Chart> charts, Set<Integer> conceptIds) {
+        this.version = version;
+        this.charts = Collections.unmodifiableList(charts);
+        Map<String, Chart> byUuid = new HashMap<>();
+        for (Chart chart : charts) {
+            byUuid.put(chart.uuid, chart);
+        }
+        this.chartsByUuid = Collections.unmodifiableMap(byUuid);
+        this.conceptIds = Collections.unmodifiableSet(conceptIds);
+    }
+
+    /** Returns the current snapshot, rebuilding it first if it is out of date. */
+    public static ChartStructure get() {
+        ChartStructure structure = current;
+        if (structure != null && structure.version == currentVersion.get()) {
+            return structure;
+        }
+        synchronized (buildLock) {
+            // Read the version before loading, so that a change made while we
+            // are loading causes the next caller to rebuild again.
+            long version = currentVersion.get();
+            structure = current;
+            if (structure == null || structure.version != version) {
+                structure = build(version);
+                current = structure;
+            }
+            return structure;
+        }
+    }
+
+    /** Marks the current snapshot as out of date. */
+    public static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+
+    private static ChartStructure build(long version) {
+        List<Chart> charts = new ArrayList<>();
+        Set<Integer> conceptIds = new LinkedHashSet<>();
+        for (Form form : ChartResource.getCharts(Context.getFormService())) {
+            charts.add(describe(form));
+            for (FormField formField : form.getFormFields()) {
+                Concept fieldConcept = formField.getField().getConcept();
+                if (fieldConcept == null) {
+                    continue;
+                }
+                conceptIds.add(fieldConcept.getId());
+                for (ConceptAnswer answer : fieldConcept.getAnswers(false)) {
+                    conceptIds.add(answer.getAnswerConcept().getId());
+                }
+            }
+        }
+        return new ChartStructure(version, charts, conceptIds);
+    }
+
+    /** Reads the groups and concepts of a form without caching them. */
+    public static Chart describe(Form form) {
+        TreeMap<Integer, TreeSet<FormField>> formStructure = FormUtil.getFormStructure(form);
+        List<Group> groups = new ArrayList<>();
+        TreeSet<FormField> groupFields = formStructure.get(0);
+        if (groupFields == null) {
+            return new Chart(form, groups, null);
+        }
+        for (FormField groupField : groupFields) {
+            Concept groupConcept = groupField.getField().getConcept();
+            if (groupConcept == null) {
+                return new Chart(form, null, String.format(
+                        "Chart %s has non-concept top-level field %s",
+                        form.getUuid(), groupField.getField().getName()));
+            }
+            List<String> conceptUuids = new ArrayList<>();
+            List<Integer> conceptIds = new ArrayList<>();
+            TreeSet<FormField> fieldsInGroup = formStructure.get(groupField.getId());
+            if (fieldsInGroup != null) {
+                for (FormField fieldInGroup : fieldsInGroup) {
+                    Concept fieldConcept = fieldInGroup.getField().getConcept();
+                    if (fieldConcept == null) {
+                        return new Chart(form, null, String.format(
+                                "Chart %s has non-concept subfield %s",
+                                form.getUuid(), fieldInGroup.getField().getName()));
+                    }
+                    conceptUuids.add(fieldConcept.getUuid());
+                    conceptIds.add(fieldConcept.getId());
+                }
+            }
+            groups.add(new Group(groupConcept.getUuid(), conceptUuids, conceptIds));
+        }
+        return new Chart(form, groups, null);
+    }
+
+    /** Returns a number that changes whenever the structure is rebuilt. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns the charts, in the order they are listed in the global property. */
+    public List<Chart> getCharts() {
+        return charts;
+    }
+
+    /** Returns the chart with the given form UUID, or null if it is not a chart. */
+    public Chart getChart(String uuid) {
+        return chartsByUuid.get(uuid);
+    }
+
+    /**
+     * Returns the IDs of all the concepts that the client needs to know about:
+     * the concepts of all fields in all the charts, and their coded answers.
+     */
+    public Set<Integer> getConceptIds() {
+        return conceptIds;
+    }
+
+    /** Returns the UUIDs of all the concepts that appear within a chart group. */
+    public Set<String> getGroupedConceptUuids() {
+        Set<String> uuids = new LinkedHashSet<>();
+        for (Chart chart : charts) {
+            for (Group group : chart.getGroups()) {
+                uuids.addAll(group.conceptUuids);
+            }
+        }
+        return uuids;
+    }
+
+    /** Returns the IDs of all the concepts that appear within a chart group. */
+    public Set<Integer> getGroupedConceptIds() {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (Chart chart : charts) {
+            for (Group group : chart.getGroups()) {
+                ids.addAll(group.conceptIds);
+            }
+        }
+        return ids;
+    }
+}
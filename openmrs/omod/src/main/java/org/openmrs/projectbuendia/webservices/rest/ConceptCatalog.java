@@ -0,0 +1,131 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.Field;
+import org.openmrs.Form;
+import org.openmrs.FormField;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.projectbuendia.ClientConceptNamer;
+import org.openmrs.projectbuendia.Utils;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The complete response for GET /concept, precomputed as serialized JSON.
+ * One copy is kept for each distinct list of requested locales, and all the
+ * copies are discarded whenever a chart, concept, or global property changes.
+ * The "snapshotTime" in the response is the time the copy was built.
+ */
+public class ConceptCatalog {
+    /** Bounds memory use if clients ask for many different locale lists. */
+    private static final int MAX_ENTRIES = 16;
+
+    /** Incremented whenever anything that affects the catalog changes. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses,
+                        Concept.class, ConceptName.class, ConceptAnswer.class,
+                        ConceptDatatype.class, Form.class, FormField.class, Field.class,
+                        GlobalProperty.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private static class Entry {
+        final long version;
+        final byte[] json;
+
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    private ConceptCatalog() {
+    }
+
+    /**
+     * Gets the UTF-8 encoded JSON response listing all the chart concepts.
+     * @param localeIds the "locales" query parameter (see {@link ConceptResource})
+     */
+    public static byte[] getJson(String localeIds) {
+        List<Locale> locales = ConceptResource.getLocales(localeIds);
+        String key = StringUtils.join(locales, ",");
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == currentVersion.get()) {
+            return entry.json;
+        }
+        synchronized (ConceptCatalog.class) {
+            // Read the version before building, so that a change made while
+            // we are building causes the next caller to rebuild again.
+            long version = currentVersion.get();
+            entry = entries.get(key);
+            if (entry == null || entry.version != version) {
+                if (entries.size() >= MAX_ENTRIES) {
+                    entries.clear();
+                }
+                entry = new Entry(version, build(locales));
+                entries.put(key, entry);
+            }
+            return entry.json;
+        }
+    }
+
+    /** Discards all the precomputed responses. */
+    public static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+
+    private static byte[] build(List<Locale> locales) {
+        List<ClientConceptNamer> namers = ConceptResource.getNamers(locales);
+        List<SimpleObject> results = new ArrayList<>();
+        for (Concept concept : ConceptResource.getChartConcepts(Context.getConceptService())) {
+            SimpleObject json = new SimpleObject();
+            json.put("uuid", concept.getUuid());
+            ConceptResource.populateJsonProperties(concept, namers, json);
+            results.add(json);
+        }
+        SimpleObject response = new SimpleObject();
+        response.put("results", results);
+        response.put("snapshotTime", Utils.toIso8601(new Date()));
+        try {
+            return mapper.writeValueAsBytes(response);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
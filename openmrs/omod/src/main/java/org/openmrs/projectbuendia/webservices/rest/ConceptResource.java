@@ -12,12 +12,7 @@
 package org.openmrs.projectbuendia.webservices.rest;
 
 import org.openmrs.Concept;
-import org.openmrs.ConceptAnswer;
-import org.openmrs.Field;
-import org.openmrs.Form;
-import org.openmrs.FormField;
 import org.openmrs.api.ConceptService;
-import org.openmrs.api.FormService;
 import org.openmrs.api.context.Context;
 import org.openmrs.hl7.HL7Constants;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -37,7 +32,9 @@ import java.util.Set;
 
 /**
  * REST collection of all the concepts that are present in at least one of the
- * charts returned by {@link ChartResource}.
+ * charts returned by {@link ChartResource}.  Requests for the whole collection
+ * are normally answered from the precomputed {@link ConceptCatalog} by
+ * {@link RestController}; this resource still handles single-concept requests.
  *
  * @see AbstractReadOnlyResource
  */
@@ -57,15 +54,11 @@ public class ConceptResource extends AbstractReadOnlyResource<Concept> {
         HL7_TYPE_NAMES.put("ZZ", "none");
     }
 
-    private final FormService formService;
     private final ConceptService conceptService;
-    private final ClientConceptNamer namer;
 
     public ConceptResource() {
         super("concept", Representation.DEFAULT);
-        formService = Context.getFormService();
         conceptService = Context.getConceptService();
-        namer = new ClientConceptNamer(Context.getLocale());
     }
 
     /**
@@ -92,21 +85,17 @@ public class ConceptResource extends AbstractReadOnlyResource<Concept> {
      */
     @Override
     protected Iterable<Concept> searchImpl(RequestContext context, long snapshotTime) {
-        // Retrieves all the concepts that the client needs to know about
-        // (the concepts within all the charts served by ChartResource).
+        return getChartConcepts(conceptService);
+    }
+
+    /**
+     * Retrieves all the concepts that the client needs to know about
+     * (the concepts within all the charts served by ChartResource).
+     */
+    static Set<Concept> getChartConcepts(ConceptService conceptService) {
         Set<Concept> ret = new HashSet<>();
-        for (Form chart : ChartResource.getCharts(formService)) {
-            for (FormField formField : chart.getFormFields()) {
-                Field field = formField.getField();
-                Concept fieldConcept = field.getConcept();
-                if (fieldConcept == null) {
-                    continue;
-                }
-                ret.add(fieldConcept);
-                for (ConceptAnswer answer : fieldConcept.getAnswers(false)) {
-                    ret.add(answer.getAnswerConcept());
-                }
-            }
+        for (Integer id : ChartStructure.get().getConceptIds()) {
+            ret.add(conceptService.getConcept(id));
         }
         return ret;
     }
@@ -138,25 +127,44 @@ public class ConceptResource extends AbstractReadOnlyResource<Concept> {
     @Override
     protected void populateJsonProperties(
             Concept concept, RequestContext context, SimpleObject json, long snapshotTime) {
-       // TODO: Cache this in the request context?
-       List<Locale> locales = getLocalesForRequest(context);
-       String jsonType = HL7_TYPE_NAMES.get(concept.getDatatype().getHl7Abbreviation());
-       if (jsonType == null) {
-           throw new ConfigurationException("Concept %s has unmapped HL7 data type %s",
-                   concept.getName().getName(), concept.getDatatype().getHl7Abbreviation());
-       }
-       json.put("xform_id", concept.getId());
-       json.put("type", jsonType);
-       Map<String, String> names = new HashMap<>();
-       for (Locale locale : locales) {
-           names.put(locale.toString(), namer.getClientName(concept));
-       }
-       json.put("names", names);
+        List<Locale> locales = getLocales(context.getRequest().getParameter("locales"));
+        populateJsonProperties(concept, getNamers(locales), json);
     }
 
-    private List<Locale> getLocalesForRequest(RequestContext context) {
-        // TODO: Make this cheap to call multiple times for a single request.
-        String localeIds = context.getRequest().getParameter("locales");
+    /**
+     * Adds the "xform_id", "type", and "names" fields described above, using
+     * one namer for each locale that should appear in "names".
+     */
+    static void populateJsonProperties(
+            Concept concept, List<ClientConceptNamer> namers, SimpleObject json) {
+        String jsonType = HL7_TYPE_NAMES.get(concept.getDatatype().getHl7Abbreviation());
+        if (jsonType == null) {
+            throw new ConfigurationException("Concept %s has unmapped HL7 data type %s",
+                    concept.getName().getName(), concept.getDatatype().getHl7Abbreviation());
+        }
+        json.put("xform_id", concept.getId());
+        json.put("type", jsonType);
+        Map<String, String> names = new HashMap<>();
+        for (ClientConceptNamer namer : namers) {
+            names.put(namer.getLocale().toString(), namer.getClientName(concept));
+        }
+        json.put("names", names);
+    }
+
+    /** Makes a namer for each of the given locales. */
+    static List<ClientConceptNamer> getNamers(List<Locale> locales) {
+        List<ClientConceptNamer> namers = new ArrayList<>();
+        for (Locale locale : locales) {
+            namers.add(new ClientConceptNamer(locale));
+        }
+        return namers;
+    }
+
+    /**
+     * Parses the "locales" query parameter, a comma-separated list of locale
+     * IDs; if it is missing or empty, returns all the allowed locales.
+     */
+    static List<Locale> getLocales(String localeIds) {
         if (localeIds == null || localeIds.trim().equals("")) {
             return Context.getAdministrationService().getAllowedLocales();
         }
@@ -25,8 +25,15 @@ public class DbUtil {
     // OpenMRS object UUIDs
     public static final String ASSIGNED_LOCATION_PERSON_ATTRIBUTE_TYPE_UUID =
             "0dd66a70-5d0a-4665-90be-67e2fe01b3fc";
-
-    /** Gets or creates the PatientIdentifierType for MSF patient IDs. */
+    // The OpenMRS "uuid" field is misnamed; OpenMRS uses the field for
+    // arbitrary string IDs unrelated to RFC 4122.  Therefore, to prevent
+    // collisions, UUIDs specific to this module are prefixed "buendia.".
+    public static final String ORDER_EXECUTED_CONCEPT_UUID = "buendia.order_executed";
+
+    /**
+     * Gets or creates the PatientIdentifierType for MSF patient IDs.  As this
+     * may write, call it before ProjectBuendiaService.read or readSnapshot.
+     */
     public static PatientIdentifierType getMsfIdentifierType() {
         PatientService service = Context.getPatientService();
         PatientIdentifierType identifierType =
@@ -94,13 +101,7 @@ public class DbUtil {
     // which "order executed" is observed for the appropriate order.
     public static Concept getOrderExecutedConcept() {
         return DbUtil.getConcept(
-                "Order executed",
-                // The OpenMRS "uuid" field is misnamed; OpenMRS uses the field for
-                // arbitrary string IDs unrelated to RFC 4122.  Therefore, to prevent
-                // collisions, UUIDs specific to this module are prefixed "buendia.".
-                "buendia.order_executed",
-                "N/A",
-                "Finding");
+                "Order executed", ORDER_EXECUTED_CONCEPT_UUID, "N/A", "Finding");
     }
 
     /** Gets or creates a PersonAttributeType with a given UUID and name. */
@@ -119,7 +120,10 @@ public class DbUtil {
         return personAttributeType;
     }
 
-    /** Gets the attribute type for the patient's assigned location. */
+    /**
+     * Gets or creates the attribute type for the patient's assigned location.
+     * As this may write, call it before ProjectBuendiaService.read or readSnapshot.
+     */
     public static PersonAttributeType getAssignedLocationAttributeType() {
         return getPersonAttributeType(
                 ASSIGNED_LOCATION_PERSON_ATTRIBUTE_TYPE_UUID, "assigned_location");
@@ -131,19 +135,25 @@ public class DbUtil {
         return attribute != null ? attribute.getValue() : null;
     }
 
-    /** Sets an attribute on a person. */
+    /**
+     * Sets an attribute on a person.  A changed value is stored in a new
+     * attribute and the old one is voided, as names are edited, so that the
+     * new row's creation time tells incremental syncs about the change.
+     */
     public static void setPersonAttributeValue(
             Patient patient, PersonAttributeType attrType, String value) {
         PersonService personService = Context.getPersonService();
-        PersonAttribute attribute = patient.getAttribute(attrType);
-        if (attribute == null) {
-            attribute = new PersonAttribute();
-            attribute.setAttributeType(attrType);
-            attribute.setValue(value);
-            patient.addAttribute(attribute);
-        } else {
-            attribute.setValue(value);
+        PersonAttribute oldAttribute = patient.getAttribute(attrType);
+        if (oldAttribute != null) {
+            if (Objects.equals(oldAttribute.getValue(), value)) {
+                return;
+            }
+            oldAttribute.setVoided(true);
         }
+        PersonAttribute attribute = new PersonAttribute();
+        attribute.setAttributeType(attrType);
+        attribute.setValue(value);
+        patient.addAttribute(attribute);
         personService.savePerson(patient);
     }
 
@@ -20,6 +20,7 @@ package org.openmrs.projectbuendia.webservices.rest;
 public final class GlobalProperties {
     public static final String CHART_UUIDS = "projectbuendia.chartUuids";
     public static final String CURRENT_PROFILE = "projectbuendia.currentProfile";
+    public static final String SLOW_REQUEST_THRESHOLDS = "projectbuendia.slowRequestThresholds";
 
     private GlobalProperties() {
     }
@@ -31,6 +31,7 @@ import org.openmrs.module.webservices.rest.web.resource.api.Retrievable;
 import org.openmrs.module.webservices.rest.web.resource.api.Searchable;
 import org.openmrs.module.webservices.rest.web.resource.api.Updatable;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
 import java.util.ArrayList;
@@ -45,6 +46,8 @@ import java.util.Set;
  * <p>Expected behavior:
  * <ul>
  * <li>GET /location returns all locations ({@link #getAll(RequestContext)})
+ * <li>GET /location?counts=true returns all locations, each with a count of the
+ *     patients assigned to it ({@link #search(RequestContext)})
  * <li>GET /location/[UUID] returns a single location ({@link #retrieve(String, RequestContext)})
  * <li>POST /location adds a location ({@link #create(SimpleObject, RequestContext)}
  * <li>POST /location/[UUID] updates a location ({@link #update(String, SimpleObject, RequestContext)})
@@ -64,6 +67,10 @@ import java.util.Set;
  * }
  * </pre>
  *
+ * <p>When counts are requested, each location additionally has a
+ * "patient_count" field giving the number of patients assigned directly to
+ * that location (not including patients in its child locations).
+ *
  * <p>If an error occurs, the response will be in the form:
  * <pre>
  * {
@@ -106,8 +113,17 @@ public class LocationResource implements
 
     public LocationResource() {
         locationService = Context.getLocationService();
-        Location root = getRootLocation(locationService);
-        ensureZonesExist(locationService, root);
+    }
+
+    /**
+     * Creates the root location and the hard-coded zones if they don't exist.
+     * This is called once at module startup, not for every request.
+     */
+    public static void ensureBaseLocationsExist() {
+        LocationService service = Context.getLocationService();
+        Location root = getRootLocation(service);
+        ensureZonesExist(service, root);
+        LocationTree.invalidate();
     }
 
     private static Location getRootLocation(LocationService service) {
@@ -168,7 +184,9 @@ public class LocationResource implements
         Location location = new Location();
         updateNames(request, location);
         location.setParentLocation(parent);
-        return locationService.saveLocation(location);
+        location = locationService.saveLocation(location);
+        LocationTree.invalidate();
+        return location;
     }
 
     private void updateNames(SimpleObject request, Location location) {
@@ -194,7 +212,7 @@ public class LocationResource implements
     public SimpleObject getAll(RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "getAll");
-            SimpleObject result = getAllInner();
+            SimpleObject result = getAllInner(false);
             logger.reply(context, this, "getAll", result);
             return result;
         } catch (Exception e) {
@@ -203,28 +221,37 @@ public class LocationResource implements
         }
     }
 
-    private SimpleObject getAllInner() throws ResponseException {
+    private SimpleObject getAllInner(boolean includeCounts) throws ResponseException {
         ArrayList<SimpleObject> jsonResults = new ArrayList<>();
-        // A new fetch is needed to sort out the hibernate cache.
-        Location root = locationService.getLocationByUuid(ROOT_UUID);
-        if (root == null) {
-            throw new IllegalStateException(
-                "Top-level location not found, expected UUID: " + ROOT_UUID);
+        // All the counts come from one aggregate query, so the cost of this
+        // doesn't depend on the number of patients or locations.
+        Map<Integer, Long> patientCounts = includeCounts
+                ? Context.getService(ProjectBuendiaService.class).getPatientCountsByLocation(
+                        DbUtil.getAssignedLocationAttributeType())
+                : null;
+        for (LocationTree.Node node : LocationTree.get().getNodes()) {
+            SimpleObject json = nodeToJson(node);
+            if (patientCounts != null) {
+                Long count = patientCounts.get(node.id);
+                json.add("patient_count", count == null ? 0L : count);
+            }
+            jsonResults.add(json);
         }
-        addRecursively(root, jsonResults);
         SimpleObject list = new SimpleObject();
         list.add("results", jsonResults);
         return list;
     }
 
-    private void addRecursively(Location location, ArrayList<SimpleObject> results) {
-        if (location.isRetired()) {
-            return;
-        }
-        results.add(locationToJson(location));
-        for (Location child : location.getChildLocations()) {
-            addRecursively(child, results);
+    private SimpleObject nodeToJson(LocationTree.Node node) {
+        SimpleObject result = new SimpleObject();
+        result.add("uuid", node.uuid);
+        if (node.parentUuid != null) {
+            result.add("parent_uuid", node.parentUuid);
         }
+        SimpleObject names = new SimpleObject();
+        names.add("en", node.name);
+        result.add("names", names);
+        return result;
     }
 
     private SimpleObject locationToJson(Location location) {
@@ -258,8 +285,10 @@ public class LocationResource implements
 
 
     private SimpleObject searchInner(RequestContext requestContext) throws ResponseException {
-        return getAll(requestContext);
+        boolean includeCounts = "true".equals(requestContext.getParameter("counts"));
+        return getAllInner(includeCounts);
     }
+
     @Override
     public Object retrieve(String uuid, RequestContext context) throws ResponseException {
         try {
@@ -274,6 +303,11 @@ public class LocationResource implements
     }
 
     private Object retrieveInner(String uuid) throws ResponseException {
+        LocationTree.Node node = LocationTree.get().getByUuid(uuid);
+        if (node != null) {
+            return nodeToJson(node);
+        }
+        // Retired locations aren't in the tree, but can still be retrieved.
         Location location = locationService.getLocationByUuid(uuid);
         return location == null ? null : locationToJson(location);
     }
@@ -305,6 +339,7 @@ public class LocationResource implements
         }
         updateNames(request, existing);
         Location location = locationService.saveLocation(existing);
+        LocationTree.invalidate();
         return locationToJson(location);
     }
 
@@ -344,6 +379,7 @@ public class LocationResource implements
         }
 
         deleteLocationRecursively(location);
+        LocationTree.invalidate();
     }
 
     private void deleteLocationRecursively(Location location) {
@@ -0,0 +1,147 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable snapshot of the non-retired locations under the root location.
+ * The current snapshot is rebuilt lazily, only after a location has been
+ * created, updated, or deleted, so most requests for locations don't touch
+ * the database at all.
+ */
+public class LocationTree {
+    /** One location in the tree. */
+    public static class Node {
+        public final int id;
+        public final String uuid;
+        public final String parentUuid;  // null for the root location
+        public final String name;
+
+        Node(Location location) {
+            id = location.getId();
+            uuid = location.getUuid();
+            Location parent = location.getParentLocation();
+            parentUuid = parent == null ? null : parent.getUuid();
+            name = location.getDisplayString();
+        }
+    }
+
+    /** Incremented whenever any location changes. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Object buildLock = new Object();
+    private static volatile LocationTree current;
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses, Location.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private final long version;
+    private final List<Node> nodes;
+    private final Map<String, Node> nodesByUuid;
+    private final Map<Integer, Node> nodesById;
+
+    private LocationTree(long version, List<Node> nodes) {
+        this.version = version;
+        this.nodes = Collections.unmodifiableList(nodes);
+        Map<String, Node> byUuid = new HashMap<>();
+        Map<Integer, Node> byId = new HashMap<>();
+        for (Node node : nodes) {
+            byUuid.put(node.uuid, node);
+            byId.put(node.id, node);
+        }
+        this.nodesByUuid = Collections.unmodifiableMap(byUuid);
+        this.nodesById = Collections.unmodifiableMap(byId);
+    }
+
+    /** Returns the current snapshot, rebuilding it first if it is out of date. */
+    public static LocationTree get() {
+        LocationTree tree = current;
+        if (tree != null && tree.version == currentVersion.get()) {
+            return tree;
+        }
+        synchronized (buildLock) {
+            // Read the version before loading, so that a change made while we
+            // are loading causes the next caller to rebuild again.
+            long version = currentVersion.get();
+            tree = current;
+            if (tree == null || tree.version != version) {
+                tree = build(version);
+                current = tree;
+            }
+            return tree;
+        }
+    }
+
+    /** Marks the current snapshot as out of date. */
+    public static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+
+    private static LocationTree build(long version) {
+        Location root = Context.getLocationService().getLocationByUuid(
+                LocationResource.ROOT_UUID);
+        if (root == null) {
+            throw new IllegalStateException(
+                    "Top-level location not found, expected UUID: " + LocationResource.ROOT_UUID);
+        }
+        List<Node> nodes = new ArrayList<>();
+        addRecursively(root, nodes);
+        return new LocationTree(version, nodes);
+    }
+
+    private static void addRecursively(Location location, List<Node> nodes) {
+        if (location.isRetired()) {
+            return;
+        }
+        nodes.add(new Node(location));
+        for (Location child : location.getChildLocations()) {
+            addRecursively(child, nodes);
+        }
+    }
+
+    /** Returns a number that changes whenever the tree is rebuilt. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns all the locations in depth-first order, starting with the root. */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /** Returns the location with the given UUID, or null if it is not in the tree. */
+    public Node getByUuid(String uuid) {
+        return nodesByUuid.get(uuid);
+    }
+
+    /** Returns the location with the given ID, or null if it is not in the tree. */
+    public Node getById(int id) {
+        return nodesById.get(id);
+    }
+}
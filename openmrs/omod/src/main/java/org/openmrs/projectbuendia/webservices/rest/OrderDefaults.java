@@ -0,0 +1,98 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.CareSetting;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.EncounterType;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.OrderType;
+import org.openmrs.api.context.Context;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The IDs of the metadata that {@link OrderResource} attaches to every order it
+ * creates or revises: the location and type of the encounter that holds the
+ * order, and the order's type, care setting, and concept.  Finding these each
+ * time takes several lookups by name (and the default location also needs a
+ * global property), so the IDs are kept and the entities are then fetched by
+ * primary key.  IDs rather than entities are kept because entities belong to
+ * the Hibernate session that loaded them.
+ *
+ * <p>The kept IDs are discarded whenever any of these kinds of metadata change.
+ */
+class OrderDefaults {
+    /** Incremented whenever any of the metadata changes. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Object buildLock = new Object();
+    private static volatile OrderDefaults current;
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses,
+                        Location.class, EncounterType.class, OrderType.class,
+                        CareSetting.class, Concept.class, ConceptName.class,
+                        GlobalProperty.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private final long version;
+    final int locationId;
+    final int encounterTypeId;
+    final int orderTypeId;
+    final int careSettingId;
+    final int freeTextOrderConceptId;
+
+    private OrderDefaults(long version) {
+        this.version = version;
+        locationId = Context.getLocationService().getDefaultLocation().getId();
+        encounterTypeId = Context.getEncounterService().getEncounterType("ADULTRETURN").getId();
+        orderTypeId = DbUtil.getMiscOrderType().getId();
+        careSettingId = Context.getOrderService().getCareSettingByName("Outpatient").getId();
+        freeTextOrderConceptId = DbUtil.getConcept(
+                "Order described in free text instructions",
+                OrderResource.FREE_TEXT_ORDER_UUID, "N/A", "Misc").getId();
+    }
+
+    /** Returns the current defaults, looking them up first if they are out of date. */
+    static OrderDefaults get() {
+        OrderDefaults defaults = current;
+        if (defaults != null && defaults.version == currentVersion.get()) {
+            return defaults;
+        }
+        synchronized (buildLock) {
+            // Read the version before loading, so that a change made while we
+            // are loading causes the next caller to load again.
+            long version = currentVersion.get();
+            defaults = current;
+            if (defaults == null || defaults.version != version) {
+                defaults = new OrderDefaults(version);
+                current = defaults;
+            }
+            return defaults;
+        }
+    }
+
+    /** Marks the current defaults as out of date. */
+    static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+}
@@ -25,6 +25,8 @@ import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.*;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.projectbuendia.openmrs.api.OrderRow;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
 import java.util.*;
@@ -104,7 +106,12 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
     public SimpleObject getAll(RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "getAll");
-            SimpleObject result = getAllInner();
+            SimpleObject result = Context.getService(ProjectBuendiaService.class).read(
+                    new ProjectBuendiaService.Reader<SimpleObject>() {
+                        @Override public SimpleObject read() {
+                            return getAllInner();
+                        }
+                    });
             logger.reply(context, this, "getAll", result);
             return result;
         } catch (Exception e) {
@@ -114,14 +121,20 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
     }
 
     private SimpleObject getAllInner() throws ResponseException {
-        return getSimpleObjectWithResults(getAllOrders());
+        return getSimpleObjectWithRowResults(
+                Context.getService(ProjectBuendiaService.class).getLatestOrderRows());
     }
 
     @Override
-    public SimpleObject search(RequestContext context) throws ResponseException {
+    public SimpleObject search(final RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "getAll");
-            SimpleObject result = searchInner(getPatient(context));
+            SimpleObject result = Context.getService(ProjectBuendiaService.class).read(
+                    new ProjectBuendiaService.Reader<SimpleObject>() {
+                        @Override public SimpleObject read() {
+                            return searchInner(getPatient(context));
+                        }
+                    });
             logger.reply(context, this, "getAll", result);
             return result;
         } catch (Exception e) {
@@ -131,27 +144,16 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
     }
 
     SimpleObject searchInner(Patient patient) throws ResponseException {
-        return getSimpleObjectWithResults(patient == null ?
-                getAllOrders() :
-                orderService.getAllOrdersByPatient(patient));
+        if (patient == null) {
+            return getAllInner();
+        }
+        return getSimpleObjectWithResults(
+                Context.getService(ProjectBuendiaService.class).getLatestOrdersByPatient(patient));
     }
 
+    /** Returns the latest revision of every order, for all patients. */
     public Collection<Order> getAllOrders() {
-        Map<String, Order> orders = new HashMap<>();
-        Set<String> previousOrderUuids = new HashSet<>();
-        for (Encounter encounter : encounterService.getEncounters(
-                null, null, null, null, null, null, null, null, null, false)) {
-            for (Order order : encounter.getOrders()) {
-                orders.put(order.getUuid(), order);
-                if (order.getPreviousOrder() != null) {
-                    previousOrderUuids.add(order.getPreviousOrder().getUuid());
-                }
-            }
-        }
-        for (String uuid : previousOrderUuids) {
-            orders.remove(uuid);
-        }
-        return orders.values();
+        return Context.getService(ProjectBuendiaService.class).getLatestOrders(null);
     }
 
     public Object create(SimpleObject json, RequestContext context) throws ResponseException {
@@ -177,20 +179,20 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
         encounter.setCreator(CREATOR);  // TODO: do this properly from authentication
         encounter.setEncounterDatetime(encounterDateTime);
         encounter.setPatient(patient);
-        encounter.setLocation(Context.getLocationService().getDefaultLocation());
-        encounter.setEncounterType(encounterService.getEncounterType("ADULTRETURN"));
+        OrderDefaults defaults = OrderDefaults.get();
+        encounter.setLocation(Context.getLocationService().getLocation(defaults.locationId));
+        encounter.setEncounterType(encounterService.getEncounterType(defaults.encounterTypeId));
         encounterService.saveEncounter(encounter);
         return encounter;
     }
 
     Concept getFreeTextOrderConcept() {
-        return DbUtil.getConcept(
-                "Order described in free text instructions",
-                FREE_TEXT_ORDER_UUID, "N/A", "Misc");
+        return conceptService.getConcept(OrderDefaults.get().freeTextOrderConceptId);
     }
 
     Provider getProvider() {
-        return providerService.getAllProviders(false).get(0); // omit retired
+        // The first non-retired provider, as listed by the ProviderService.
+        return providerService.getProvider(ProviderDirectory.get().getEntries().get(0).id);
     }
 
     /** Creates a new Order and a corresponding Encounter containing it. */
@@ -216,8 +218,9 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
         order.setCreator(CREATOR);  // TODO: do this properly from authentication
         order.setEncounter(createEncounter(patient, new Date()));
         order.setOrderer(getProvider());
-        order.setOrderType(DbUtil.getMiscOrderType());
-        order.setCareSetting(orderService.getCareSettingByName("Outpatient"));
+        OrderDefaults defaults = OrderDefaults.get();
+        order.setOrderType(orderService.getOrderType(defaults.orderTypeId));
+        order.setCareSetting(orderService.getCareSetting(defaults.careSettingId));
         order.setConcept(getFreeTextOrderConcept());
         order.setDateCreated(new Date());
         order.setPatient(patient);
@@ -236,10 +239,15 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
     }
 
     @Override
-    public Object retrieve(String uuid, RequestContext context) throws ResponseException {
+    public Object retrieve(final String uuid, RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "retrieve", uuid);
-            Object result = retrieveInner(uuid);
+            Object result = Context.getService(ProjectBuendiaService.class).read(
+                    new ProjectBuendiaService.Reader<Object>() {
+                        @Override public Object read() {
+                            return retrieveInner(uuid);
+                        }
+                    });
             logger.reply(context, this, "retrieve", result);
             return result;
         } catch (Exception e) {
@@ -271,6 +279,17 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
         return json;
     }
 
+    /** Like {@link #getSimpleObjectWithResults(Collection)}, for projected rows. */
+    SimpleObject getSimpleObjectWithRowResults(List<OrderRow> rows) {
+        List<SimpleObject> jsonResults = new ArrayList<>();
+        for (OrderRow row : rows) {
+            jsonResults.add(orderRowToJson(row));
+        }
+        SimpleObject json = new SimpleObject();
+        json.add("results", jsonResults);
+        return json;
+    }
+
     @Override
     public Object update(String uuid, SimpleObject simpleObject, RequestContext context) throws ResponseException {
         try {
@@ -374,4 +393,21 @@ public class OrderResource implements Listable, Searchable, Retrievable, Creatab
         }
         return json;
     }
+
+    /** Serializes an order row to the same JSON as {@link #orderToJson(Order)}. */
+    static SimpleObject orderRowToJson(OrderRow row) {
+        SimpleObject json = new SimpleObject();
+        json.add("uuid", row.uuid);
+        json.add("patient_uuid", row.patientUuid);
+        if (row.instructions != null) {
+            json.add("instructions", row.instructions);
+        }
+        if (row.scheduledDate != null) {
+            json.add("start", row.scheduledDate.getTime());
+        }
+        if (row.autoExpireDate != null) {
+            json.add("stop", row.autoExpireDate.getTime());
+        }
+        return json;
+    }
 }
@@ -15,6 +15,7 @@ import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
+import org.openmrs.api.ConceptService;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
@@ -26,11 +27,16 @@ import org.openmrs.module.webservices.rest.web.resource.api.Creatable;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.projectbuendia.Utils;
 import org.openmrs.projectbuendia.VisitObsValue;
+import org.projectbuendia.openmrs.api.ObsRow;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A collection where each item corresponds to one patient and contains
@@ -45,9 +51,53 @@ import java.util.List;
         supportedClass = Patient.class, supportedOpenmrsVersions = "1.10.*,1.11.*")
 public class PatientEncountersResource
         extends AbstractReadOnlyResource<Patient> implements Creatable {
+    /** Formats observation values for JSON output.  Stateless, so it is shared. */
+    private static final VisitObsValue.ObsValueVisitor<String> OBS_VALUE_FORMATTER =
+            new VisitObsValue.ObsValueVisitor<String>() {
+                @Override
+                public String visitCoded(Concept value) {
+                    return value.getUuid();
+                }
+
+                @Override
+                public String visitNumeric(Double value) {
+                    return String.valueOf(value);
+                }
+
+                @Override
+                public String visitBoolean(Boolean value) {
+                    return String.valueOf(value);
+                }
+
+                @Override
+                public String visitText(String value) {
+                    return value;
+                }
+
+                @Override
+                public String visitDate(Date value) {
+                    return Utils.appendYyyyMmDd(new StringBuilder(10), value.getTime()).toString();
+                }
+
+                @Override
+                public String visitDateTime(Date value) {
+                    return Utils.toIso8601(value);
+                }
+            };
+
+    /** Request attribute that holds the {@link Tombstones} for an "sm" request. */
+    private static final String TOMBSTONES_ATTRIBUTE =
+            PatientEncountersResource.class.getName() + ".tombstones";
+
     private final PatientService patientService;
     private final EncounterService encounterService;
 
+    /** The records of items voided since an "sm" time, for one patient. */
+    private static class Tombstones {
+        final List<SimpleObject> encounters = new ArrayList<>();
+        final List<SimpleObject> observations = new ArrayList<>();
+    }
+
     public PatientEncountersResource() {
         super("patient", Representation.DEFAULT);
         patientService = Context.getPatientService();
@@ -69,13 +119,10 @@ public class PatientEncountersResource
     }
 
     /**
-     * Returns all patients.  The retrieved records will be filled in with
-     * each patient's encounter and observation data by
-     * {@link #populateJsonProperties(Patient, RequestContext, SimpleObject, long)}
-     * on its way to becoming JSON that is sent to the client.
+     * Returns all patients.  Lists are built by
+     * {@link #searchToJson(RequestContext, long)}, which doesn't call this,
+     * but the superclass requires it.
      * @see AbstractReadOnlyResource#search(RequestContext)
-     * @param context unused here; see populateJsonProperties() for details
-     * @param snapshotTime unused here; see populateJsonProperties() for details
      */
     @Override
     public List<Patient> searchImpl(RequestContext context, long snapshotTime) {
@@ -93,6 +140,12 @@ public class PatientEncountersResource
      *     <li>"uuid": the encounter's UUID
      *     <li>"observations": {@link SimpleObject} that maps concept UUIDs to values
      *     </ul>
+     *     When "sm" is given, this list also contains {"uuid": ..., "voided": true}
+     *     for each of the patient's encounters that was voided at or after "sm".
+     * <li>"voided_observations": present only when "sm" is given and some of the
+     *     patient's observations in non-voided encounters were voided at or after
+     *     "sm"; a {@link List} of {@link SimpleObject}s, each containing the "uuid",
+     *     "encounter_uuid", and "concept_uuid" of a voided observation
      * </ul>
      * @param context the request context; supports the optional "sm" query
      *     parameter, which lets a client fetch only the data that is new since
@@ -107,12 +160,7 @@ public class PatientEncountersResource
     @Override
     protected void populateJsonProperties(
             Patient patient, RequestContext context, SimpleObject json, long snapshotTime) {
-        String parameter = context.getParameter("sm");
-        Long startMillisecondsInclusive = null;
-        if (parameter != null) {
-            // Fail fast throwing number format exception to aid debugging.
-            startMillisecondsInclusive = Long.parseLong(parameter);
-        }
+        Long startMillisecondsInclusive = getStartMillis(context);
         List<Encounter> encountersByPatient;
         if (startMillisecondsInclusive == null) {
             encountersByPatient = encounterService.getEncountersByPatient(patient);
@@ -136,9 +184,126 @@ public class PatientEncountersResource
         for (Encounter encounter : filterBeforeSnapshotTime(snapshotTime, encountersByPatient)) {
             encounters.add(encounterToJson(encounter));
         }
+        putEncounters(json, encounters, patient.getPatientId(), context, startMillisecondsInclusive);
+    }
+
+    /**
+     * Builds the list of all patients, with the same fields as
+     * {@link #populateJsonProperties(Patient, RequestContext, SimpleObject, long)},
+     * from flat rows read by two projection queries, instead of loading the
+     * encounters of each patient and the observations of each encounter.
+     */
+    @Override
+    protected List<SimpleObject> searchToJson(RequestContext context, long snapshotTime) {
+        Long startMillisecondsInclusive = getStartMillis(context);
+        ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+        List<ObsRow> rows = service.getObsRows(startMillisecondsInclusive == null ? null
+                : new Date(startMillisecondsInclusive), new Date(snapshotTime));
+
+        // The rows for each encounter are adjacent.
+        ObsRowFormatter formatter = new ObsRowFormatter();
+        Map<String, List<SimpleObject>> encountersByPatientUuid = new HashMap<>();
+        for (int start = 0, end; start < rows.size(); start = end) {
+            ObsRow first = rows.get(start);
+            for (end = start + 1; end < rows.size(); end++) {
+                if (!first.encounterUuid.equals(rows.get(end).encounterUuid)) break;
+            }
+            List<SimpleObject> encounters = encountersByPatientUuid.get(first.patientUuid);
+            if (encounters == null) {
+                encounters = new ArrayList<>();
+                encountersByPatientUuid.put(first.patientUuid, encounters);
+            }
+            encounters.add(encounterToJson(rows.subList(start, end), formatter));
+        }
+
+        List<SimpleObject> results = new ArrayList<>();
+        for (Map.Entry<Integer, String> patient : service.getPatientUuids().entrySet()) {
+            List<SimpleObject> encounters = encountersByPatientUuid.get(patient.getValue());
+            SimpleObject json = new SimpleObject();
+            json.put("uuid", patient.getValue());
+            putEncounters(json, encounters == null ? new ArrayList<SimpleObject>() : encounters,
+                    patient.getKey(), context, startMillisecondsInclusive);
+            results.add(json);
+        }
+        return results;
+    }
+
+    /** Gets the "sm" parameter, or null if it is absent. */
+    private static Long getStartMillis(RequestContext context) {
+        String parameter = context.getParameter("sm");
+        // Fail fast throwing number format exception to aid debugging.
+        return parameter == null ? null : Long.parseLong(parameter);
+    }
+
+    /**
+     * Puts a patient's encounters into its JSON, adding the records of items
+     * voided since "sm" if it was given.
+     */
+    private void putEncounters(SimpleObject json, List<SimpleObject> encounters,
+            Integer patientId, RequestContext context, Long startMillisecondsInclusive) {
+        if (startMillisecondsInclusive != null) {
+            Tombstones tombstones = getTombstones(context, startMillisecondsInclusive)
+                    .get(patientId);
+            if (tombstones != null) {
+                encounters.addAll(tombstones.encounters);
+                if (!tombstones.observations.isEmpty()) {
+                    json.put("voided_observations", tombstones.observations);
+                }
+            }
+        }
         json.put("encounters", encounters);
     }
 
+    /**
+     * Gets the records of the encounters and observations voided at or after the
+     * given time, keyed by patient ID.  These are fetched for all patients at once
+     * (by two indexed queries on the void time) and kept for the rest of the request,
+     * rather than queried for each patient.
+     */
+    private Map<Integer, Tombstones> getTombstones(
+            RequestContext context, long startMillisecondsInclusive) {
+        HttpServletRequest request = context.getRequest();
+        @SuppressWarnings("unchecked")
+        Map<Integer, Tombstones> tombstonesByPatientId = request == null ? null
+                : (Map<Integer, Tombstones>) request.getAttribute(TOMBSTONES_ATTRIBUTE);
+        if (tombstonesByPatientId != null) {
+            return tombstonesByPatientId;
+        }
+
+        ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+        Date since = new Date(startMillisecondsInclusive);
+        tombstonesByPatientId = new HashMap<>();
+        for (Encounter encounter : service.getEncountersVoidedSince(since)) {
+            SimpleObject encounterJson = new SimpleObject();
+            encounterJson.put("uuid", encounter.getUuid());
+            encounterJson.put("voided", true);
+            getOrAddTombstones(tombstonesByPatientId, encounter).encounters.add(encounterJson);
+        }
+        for (Obs obs : service.getObsVoidedSince(since)) {
+            SimpleObject obsJson = new SimpleObject();
+            obsJson.put("uuid", obs.getUuid());
+            obsJson.put("encounter_uuid", obs.getEncounter().getUuid());
+            obsJson.put("concept_uuid", obs.getConcept().getUuid());
+            getOrAddTombstones(tombstonesByPatientId, obs.getEncounter())
+                    .observations.add(obsJson);
+        }
+        if (request != null) {
+            request.setAttribute(TOMBSTONES_ATTRIBUTE, tombstonesByPatientId);
+        }
+        return tombstonesByPatientId;
+    }
+
+    private static Tombstones getOrAddTombstones(
+            Map<Integer, Tombstones> tombstonesByPatientId, Encounter encounter) {
+        Integer patientId = encounter.getPatient().getPatientId();
+        Tombstones tombstones = tombstonesByPatientId.get(patientId);
+        if (tombstones == null) {
+            tombstones = new Tombstones();
+            tombstonesByPatientId.put(patientId, tombstones);
+        }
+        return tombstones;
+    }
+
     /**
      * Given a list of encounters, selects those that were created or modified
      * at or after a specified time.
@@ -193,43 +358,38 @@ public class PatientEncountersResource
             // TODO/simplify: Move this .put() call outside the loop.
             encounterJson.put("uuid", encounter.getUuid());
             Concept concept = obs.getConcept();
-            if (concept != null &&
-                    concept.getUuid().equals(DbUtil.getOrderExecutedConcept().getUuid())) {
+            if (DbUtil.ORDER_EXECUTED_CONCEPT_UUID.equals(concept.getUuid())) {
                 orderUuids.add(obs.getOrder().getUuid());
                 continue;
             }
-            observations.put(obs.getConcept().getUuid(), VisitObsValue.visit(
-                    obs, new VisitObsValue.ObsValueVisitor<String>() {
-                        @Override
-                        public String visitCoded(Concept value) {
-                            return value.getUuid();
-                        }
-
-                        @Override
-                        public String visitNumeric(Double value) {
-                            return String.valueOf(value);
-                        }
-
-                        @Override
-                        public String visitBoolean(Boolean value) {
-                            return String.valueOf(value);
-                        }
-
-                        @Override
-                        public String visitText(String value) {
-                            return value;
-                        }
-
-                        @Override
-                        public String visitDate(Date value) {
-                            return Utils.YYYYMMDD_FORMAT.format(value);
-                        }
-
-                        @Override
-                        public String visitDateTime(Date value) {
-                            return Utils.toIso8601(value);
-                        }
-                    }));
+            observations.put(concept.getUuid(), VisitObsValue.visit(obs, OBS_VALUE_FORMATTER));
+        }
+        if (!observations.isEmpty()) {
+            encounterJson.put("observations", observations);
+        }
+        if (!orderUuids.isEmpty()) {
+            encounterJson.put("order_uuids", orderUuids);
+        }
+        return encounterJson;
+    }
+
+    /**
+     * Converts the rows of one encounter to the same JSON as
+     * {@link #encounterToJson(Encounter)}.
+     */
+    private static SimpleObject encounterToJson(List<ObsRow> rows, ObsRowFormatter formatter) {
+        SimpleObject encounterJson = new SimpleObject();
+        encounterJson.put("timestamp", Utils.toIso8601(rows.get(0).encounterDatetime));
+        SimpleObject observations = new SimpleObject();
+        List<String> orderUuids = new ArrayList<>();
+        for (ObsRow row : rows) {
+            if (row.conceptUuid == null) continue;  // an encounter with no observations
+            encounterJson.put("uuid", row.encounterUuid);
+            if (DbUtil.ORDER_EXECUTED_CONCEPT_UUID.equals(row.conceptUuid)) {
+                orderUuids.add(row.orderUuid);
+                continue;
+            }
+            observations.put(row.conceptUuid, formatter.format(row));
         }
         if (!observations.isEmpty()) {
             encounterJson.put("observations", observations);
@@ -240,6 +400,60 @@ public class PatientEncountersResource
         return encounterJson;
     }
 
+    /** Formats the values of observation rows like {@link #OBS_VALUE_FORMATTER}. */
+    private static class ObsRowFormatter {
+        // Obs.getValueAsBoolean() compares coded values with these concepts.
+        // They are looked up on the first coded boolean value, as before, and
+        // are null if the global properties naming them aren't set.
+        private boolean resolved;
+        private String trueUuid;
+        private String falseUuid;
+
+        String format(ObsRow row) {
+            switch (VisitObsValue.getValueType(row.datatypeId, row.hl7Type)) {
+                case BOOLEAN:
+                    return String.valueOf(toBoolean(row));
+                case CODED:
+                    return row.valueCodedUuid;
+                case NUMERIC:
+                    return String.valueOf(row.valueNumeric);
+                case TEXT:
+                    return row.valueText;
+                case DATE:
+                    return row.valueDatetime == null ? null : Utils.appendYyyyMmDd(
+                            new StringBuilder(10), row.valueDatetime.getTime()).toString();
+                case DATETIME:
+                    return row.valueDatetime == null ? null : Utils.toIso8601(row.valueDatetime);
+            }
+            throw new AssertionError();
+        }
+
+        /** Interprets a boolean value the way Obs.getValueAsBoolean() does. */
+        Boolean toBoolean(ObsRow row) {
+            if (row.valueCodedUuid != null) {
+                resolveBooleanConcepts();
+                return row.valueCodedUuid.equals(trueUuid) ? Boolean.TRUE
+                        : row.valueCodedUuid.equals(falseUuid) ? Boolean.FALSE : null;
+            }
+            if (row.valueNumeric != null) {
+                return row.valueNumeric == 1 ? Boolean.TRUE
+                        : row.valueNumeric == 0 ? Boolean.FALSE : null;
+            }
+            return null;
+        }
+
+        private void resolveBooleanConcepts() {
+            if (!resolved) {
+                ConceptService conceptService = Context.getConceptService();
+                Concept trueConcept = conceptService.getTrueConcept();
+                Concept falseConcept = conceptService.getFalseConcept();
+                trueUuid = trueConcept == null ? null : trueConcept.getUuid();
+                falseUuid = falseConcept == null ? null : falseConcept.getUuid();
+                resolved = true;
+            }
+        }
+    }
+
     /**
      * Create a new encounter for a patient. The expected JSON format is:
      * {
@@ -18,9 +18,9 @@ import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
 import org.openmrs.PersonName;
 import org.openmrs.User;
-import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -36,6 +36,8 @@ import org.openmrs.module.webservices.rest.web.resource.api.Updatable;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.projectbuendia.Utils;
+import org.projectbuendia.openmrs.api.PatientRow;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
 import java.text.SimpleDateFormat;
@@ -51,6 +53,9 @@ import java.util.Map;
  * <p>Expected behavior:
  * <ul>
  * <li>GET /patient returns all patients ({@link #getAll(RequestContext)})
+ * <li>GET /patient?sm=[millis] returns just the patients added, changed, or voided since
+ *     the given time, which should be the "snapshotTime" from a previous response
+ *     ({@link #getAll(RequestContext)})
  * <li>GET /patient?q=[query] returns patients whose name or ID contains the query string
  *     ({@link #search(RequestContext)})
  * <li>GET /patient/[UUID] returns a single patient ({@link #retrieve(String, RequestContext)})
@@ -75,6 +80,10 @@ import java.util.Map;
  * </pre>
  * (Results may also contain deprecated fields other than those described above.)
  *
+ * <p>Lists of patients also contain a "snapshotTime" (see
+ * {@link AbstractReadOnlyResource#search(RequestContext)}).  In a list fetched with "sm",
+ * patients that have been voided appear as just {"uuid": "...", "voided": true}.
+ *
  * <p>If an error occurs, the response will contain the following:
  * <pre>
  * {
@@ -106,6 +115,7 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
     private static final String FAMILY_NAME = "family_name";
     private static final String ASSIGNED_LOCATION = "assigned_location";
     private static final String PARENT_UUID = "parent_uuid";
+    private static final String VOIDED = "voided";
 
     private static Log log = LogFactory.getLog(PatientResource.class);
     private final PatientService patientService;
@@ -119,7 +129,7 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
     public SimpleObject getAll(RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "getAll");
-            SimpleObject result = getAllInner();
+            SimpleObject result = getAllInner(context);
             logger.reply(context, this, "getAll", result);
             return result;
         } catch (Exception e) {
@@ -128,9 +138,32 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         }
     }
 
-    private SimpleObject getAllInner() throws ResponseException {
-        List<Patient> patients = patientService.getAllPatients();
-        return getSimpleObjectWithResults(patients);
+    /**
+     * Returns all patients or, if the "sm" parameter is given, the patients modified at or
+     * after that time (in epoch millis), read in a single database snapshot.
+     */
+    private SimpleObject getAllInner(RequestContext context) throws ResponseException {
+        String parameter = context.getParameter("sm");
+        // Fail fast throwing number format exception to aid debugging.
+        final Date since = parameter == null ? null : new Date(Long.parseLong(parameter));
+        // These may be created on first use, so get them before the read-only snapshot.
+        final PatientIdentifierType msfIdentifierType = DbUtil.getMsfIdentifierType();
+        final PersonAttributeType assignedLocationType = DbUtil.getAssignedLocationAttributeType();
+        final ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+        return service.readSnapshot(new ProjectBuendiaService.SnapshotReader<SimpleObject>() {
+            @Override public SimpleObject read(long snapshotTime) {
+                List<SimpleObject> jsonResults = new ArrayList<>();
+                for (PatientRow row : service.getPatientRows(
+                        since, msfIdentifierType, assignedLocationType)) {
+                    jsonResults.add(row.voided ? voidedPatientToJson(row.uuid)
+                            : patientRowToJson(row));
+                }
+                SimpleObject result = new SimpleObject();
+                result.add("results", jsonResults);
+                result.add("snapshotTime", Utils.toIso8601(new Date(snapshotTime)));
+                return result;
+            }
+        });
     }
 
     private String validateGender(String value) {
@@ -248,10 +281,26 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
     }
 
     @Override
-    public SimpleObject search(RequestContext context) throws ResponseException {
+    public SimpleObject search(final RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "search");
-            SimpleObject result = searchInner(context);
+            // The REST framework treats any parameter, such as "sm", as a search.
+            SimpleObject result;
+            if (context.getParameter("q") == null) {
+                result = getAllInner(context);
+            } else {
+                // These may be created on first use, so get them before the read-only read.
+                final PatientIdentifierType msfIdentifierType = DbUtil.getMsfIdentifierType();
+                final PersonAttributeType assignedLocationType =
+                        DbUtil.getAssignedLocationAttributeType();
+                result = Context.getService(ProjectBuendiaService.class).read(
+                        new ProjectBuendiaService.Reader<SimpleObject>() {
+                            @Override public SimpleObject read() {
+                                return searchInner(
+                                        context, msfIdentifierType, assignedLocationType);
+                            }
+                        });
+            }
             logger.reply(context, this, "search", result);
             return result;
         } catch (Exception e) {
@@ -260,7 +309,9 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         }
     }
 
-    private SimpleObject searchInner(RequestContext requestContext) throws ResponseException {
+    private SimpleObject searchInner(RequestContext requestContext,
+            PatientIdentifierType msfIdentifierType, PersonAttributeType assignedLocationType)
+            throws ResponseException {
         // Partial string query for searches.
         String query = requestContext.getParameter("q");
 
@@ -268,17 +319,27 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         boolean searchUuid = (requestContext.getParameter("searchUuid") != null);
 
         // Retrieve all patients and filter the list based on the query.
-        List<Patient> filteredPatients = filterPatients(
-            query, searchUuid, patientService.getAllPatients());
+        List<Patient> filteredPatients = filterPatients(query, searchUuid,
+            Context.getService(ProjectBuendiaService.class).getAllPatients(), msfIdentifierType);
 
-        return getSimpleObjectWithResults(filteredPatients);
+        return getSimpleObjectWithResults(
+                filteredPatients, msfIdentifierType, assignedLocationType);
     }
 
     @Override
-    public Object retrieve(String uuid, RequestContext context) throws ResponseException {
+    public Object retrieve(final String uuid, RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "retrieve", uuid);
-            Object result = retrieveInner(uuid);
+            // These may be created on first use, so get them before the read-only read.
+            final PatientIdentifierType msfIdentifierType = DbUtil.getMsfIdentifierType();
+            final PersonAttributeType assignedLocationType =
+                    DbUtil.getAssignedLocationAttributeType();
+            Object result = Context.getService(ProjectBuendiaService.class).read(
+                    new ProjectBuendiaService.Reader<Object>() {
+                        @Override public Object read() {
+                            return retrieveInner(uuid, msfIdentifierType, assignedLocationType);
+                        }
+                    });
             logger.reply(context, this, "retrieve", result);
             return result;
         } catch (Exception e) {
@@ -287,12 +348,13 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         }
     }
 
-    private Object retrieveInner(String uuid) throws ResponseException {
+    private Object retrieveInner(String uuid, PatientIdentifierType msfIdentifierType,
+            PersonAttributeType assignedLocationType) throws ResponseException {
         Patient patient = patientService.getPatientByUuid(uuid);
         if (patient == null) {
             throw new ObjectNotFoundException();
         }
-        return patientToJson(patient);
+        return patientToJson(patient, msfIdentifierType, assignedLocationType);
     }
 
     @Override
@@ -300,13 +362,12 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         return Arrays.asList(Representation.DEFAULT);
     }
 
-    private List<Patient> filterPatients(
-            String query, boolean searchUuid, List<Patient> allPatients) {
+    private List<Patient> filterPatients(String query, boolean searchUuid,
+            List<Patient> allPatients, PatientIdentifierType msfIdentifierType) {
         List<Patient> filteredPatients = new ArrayList<>();
 
         // Filter patients by id, name, and MSF id. Don't use patientService.getPatients() for
         // this, as the behavior does not match the expected behavior from the API docs.
-        PatientIdentifierType msfIdentifierType = DbUtil.getMsfIdentifierType();
         for (Patient patient : allPatients) {
             boolean match = false;
 
@@ -340,10 +401,12 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         return filteredPatients;
     }
 
-    private SimpleObject getSimpleObjectWithResults(List<Patient> patients) {
+    private SimpleObject getSimpleObjectWithResults(List<Patient> patients,
+            PatientIdentifierType msfIdentifierType, PersonAttributeType assignedLocationType) {
         List<SimpleObject> jsonResults = new ArrayList<>();
         for (Patient patient : patients) {
-            jsonResults.add(patientToJson(patient));
+            jsonResults.add(patient.isVoided() ? voidedPatientToJson(patient.getUuid())
+                    : patientToJson(patient, msfIdentifierType, assignedLocationType));
         }
         SimpleObject list = new SimpleObject();
         list.add("results", jsonResults);
@@ -448,13 +511,28 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
         }
     }
 
+    /** Builds the placeholder that tells clients to delete their copy of a voided patient. */
+    private static SimpleObject voidedPatientToJson(String uuid) {
+        SimpleObject jsonForm = new SimpleObject();
+        jsonForm.add(UUID, uuid);
+        jsonForm.add(VOIDED, true);
+        return jsonForm;
+    }
+
+    /** Not for use inside a read-only read, as the types it needs may be created here. */
     protected static SimpleObject patientToJson(Patient patient) {
+        return patientToJson(patient, DbUtil.getMsfIdentifierType(),
+                DbUtil.getAssignedLocationAttributeType());
+    }
+
+    private static SimpleObject patientToJson(Patient patient,
+            PatientIdentifierType msfIdentifierType, PersonAttributeType assignedLocationType) {
         SimpleObject jsonForm = new SimpleObject();
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
         if (patient != null) {
             jsonForm.add(UUID, patient.getUuid());
             PatientIdentifier patientIdentifier =
-                    patient.getPatientIdentifier(DbUtil.getMsfIdentifierType());
+                    patient.getPatientIdentifier(msfIdentifierType);
             if (patientIdentifier != null) {
                 jsonForm.add(ID, patientIdentifier.getIdentifier());
             }
@@ -468,20 +546,55 @@ public class PatientResource implements Listable, Searchable, Retrievable, Creat
             // TODO: refactor so we have a single assigned location with a uuid,
             // and we walk up the tree to get extra information for the patient.
             String assignedLocation = DbUtil.getPersonAttributeValue(
-                    patient, DbUtil.getAssignedLocationAttributeType());
+                    patient, assignedLocationType);
             if (assignedLocation != null) {
-                LocationService locationService = Context.getLocationService();
-                Location location = locationService.getLocation(
-                    Integer.valueOf(assignedLocation));
-
-                SimpleObject locationJson = new SimpleObject();
-                locationJson.add(UUID, location.getUuid());
-                if (location.getParentLocation() != null) {
-                    locationJson.add(PARENT_UUID, location.getParentLocation().getUuid());
-                }
-                jsonForm.add(ASSIGNED_LOCATION, locationJson);
+                jsonForm.add(ASSIGNED_LOCATION, assignedLocationToJson(assignedLocation));
             }
         }
         return jsonForm;
     }
+
+    /** Builds the same JSON as {@link #patientToJson(Patient)} from a projected row. */
+    private static SimpleObject patientRowToJson(PatientRow row) {
+        SimpleObject jsonForm = new SimpleObject();
+        jsonForm.add(UUID, row.uuid);
+        if (row.identifier != null) {
+            jsonForm.add(ID, row.identifier);
+        }
+        jsonForm.add(GENDER, row.gender);
+        if (row.birthdate != null) {
+            jsonForm.add(BIRTHDATE, new SimpleDateFormat("yyyy-MM-dd").format(row.birthdate));
+        }
+        jsonForm.add(GIVEN_NAME, row.givenName);
+        jsonForm.add(FAMILY_NAME, row.familyName);
+        if (row.attributeValue != null) {
+            jsonForm.add(ASSIGNED_LOCATION, assignedLocationToJson(row.attributeValue));
+        }
+        return jsonForm;
+    }
+
+    /**
+     * Describes an assigned location, given the location ID stored in the attribute.
+     * Locations in the {@link LocationTree} are described without touching the
+     * database, so listing patients costs the same however many zones they are in.
+     */
+    private static SimpleObject assignedLocationToJson(String assignedLocation) {
+        int id = Integer.valueOf(assignedLocation);
+        SimpleObject locationJson = new SimpleObject();
+        LocationTree.Node node = LocationTree.get().getById(id);
+        if (node != null) {
+            locationJson.add(UUID, node.uuid);
+            if (node.parentUuid != null) {
+                locationJson.add(PARENT_UUID, node.parentUuid);
+            }
+            return locationJson;
+        }
+        // A retired location, or one outside the tree.
+        Location location = Context.getLocationService().getLocation(id);
+        locationJson.add(UUID, location.getUuid());
+        if (location.getParentLocation() != null) {
+            locationJson.add(PARENT_UUID, location.getParentLocation().getUuid());
+        }
+        return locationJson;
+    }
 }
@@ -0,0 +1,177 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.Person;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable snapshot of the non-retired providers, indexed by UUID, ID,
+ * and name.  The current snapshot is rebuilt lazily, only after a provider
+ * or user has changed, so listing and searching users doesn't touch the
+ * database and concurrent requests don't wait for each other.  Changes to
+ * persons and person names are deliberately not watched: every patient is a
+ * person, so that would throw the directory away on each patient write.  A
+ * change made only to a provider's person shows up once the provider or its
+ * user is next saved.
+ */
+public class ProviderDirectory {
+    /** One provider in the directory. */
+    public static class Entry {
+        public final int id;
+        public final String uuid;
+        public final String name;
+        public final String givenName;  // null if the provider has no person
+        public final String familyName;  // null if the provider has no person
+
+        Entry(Provider provider) {
+            id = provider.getId();
+            uuid = provider.getUuid();
+            name = provider.getName();
+            Person person = provider.getPerson();
+            givenName = person == null ? null : person.getGivenName();
+            familyName = person == null ? null : person.getFamilyName();
+        }
+    }
+
+    /** Incremented whenever any provider changes. */
+    private static final AtomicLong currentVersion = new AtomicLong();
+    private static final Object buildLock = new Object();
+    private static volatile ProviderDirectory current;
+
+    static {
+        ChangeNotifier.addListener(new ChangeNotifier.Listener() {
+            @Override public void onChange(Set<Class<?>> changedClasses) {
+                if (ChangeNotifier.anyOf(changedClasses,
+                        Provider.class, User.class)) {
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    private final long version;
+    private final long snapshotTime;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByUuid;
+    private final Map<Integer, Entry> entriesById;
+    private final Map<String, Entry> entriesByName;
+
+    private ProviderDirectory(long version, long snapshotTime, List<Entry> entries) {
+        this.version = version;
+        this.snapshotTime = snapshotTime;
+        this.entries = Collections.unmodifiableList(entries);
+        Map<String, Entry> byUuid = new HashMap<>();
+        Map<Integer, Entry> byId = new HashMap<>();
+        Map<String, Entry> byName = new HashMap<>();
+        for (Entry entry : entries) {
+            byUuid.put(entry.uuid, entry);
+            byId.put(entry.id, entry);
+            if (entry.name != null && !byName.containsKey(entry.name)) {
+                byName.put(entry.name, entry);
+            }
+        }
+        this.entriesByUuid = Collections.unmodifiableMap(byUuid);
+        this.entriesById = Collections.unmodifiableMap(byId);
+        this.entriesByName = Collections.unmodifiableMap(byName);
+    }
+
+    /** Returns the current snapshot, rebuilding it first if it is out of date. */
+    public static ProviderDirectory get() {
+        ProviderDirectory directory = current;
+        if (directory != null && directory.version == currentVersion.get()) {
+            return directory;
+        }
+        synchronized (buildLock) {
+            // Read the version before loading, so that a change made while we
+            // are loading causes the next caller to rebuild again.
+            long version = currentVersion.get();
+            directory = current;
+            if (directory == null || directory.version != version) {
+                directory = build(version);
+                current = directory;
+            }
+            return directory;
+        }
+    }
+
+    /** Marks the current snapshot as out of date. */
+    public static void invalidate() {
+        currentVersion.incrementAndGet();
+    }
+
+    private static ProviderDirectory build(final long version) {
+        return Context.getService(ProjectBuendiaService.class).readSnapshot(
+                new ProjectBuendiaService.SnapshotReader<ProviderDirectory>() {
+                    @Override public ProviderDirectory read(long snapshotTime) {
+                        List<Entry> entries = new ArrayList<>();
+                        for (Provider provider :
+                                Context.getProviderService().getAllProviders(false)) {
+                            entries.add(new Entry(provider));
+                        }
+                        return new ProviderDirectory(version, snapshotTime, entries);
+                    }
+                });
+    }
+
+    /**
+     * Returns the database clock time (in epoch millis) at which the providers
+     * were loaded, which is the time to use for a following incremental fetch.
+     */
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    /** Returns all the providers, in the order that the ProviderService lists them. */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /** Returns the provider with the given UUID, or null if there is none. */
+    public Entry getByUuid(String uuid) {
+        return entriesByUuid.get(uuid);
+    }
+
+    /** Returns the provider with the given ID, or null if there is none. */
+    public Entry getById(int id) {
+        return entriesById.get(id);
+    }
+
+    /** Returns the first provider with exactly the given name, or null if there is none. */
+    public Entry getByName(String name) {
+        return entriesByName.get(name);
+    }
+
+    /** Returns the providers whose names contain the given string, ignoring case. */
+    public List<Entry> search(String query) {
+        List<Entry> results = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (StringUtils.containsIgnoreCase(entry.name, query)) {
+                results.add(entry);
+            }
+        }
+        return results;
+    }
+}
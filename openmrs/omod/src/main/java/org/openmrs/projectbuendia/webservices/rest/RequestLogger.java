@@ -12,29 +12,81 @@
 package org.openmrs.projectbuendia.webservices.rest;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.projectbuendia.FlightRecorder;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-/** Logs REST API requests in detail, with timings, to a directory of log files. */
+/**
+ * Logs REST API requests in detail, with timings and database work (see
+ * {@link RequestStats}), to a directory of log files.  Requests that do more
+ * database work than the configured thresholds are marked "SLOW" and are also
+ * reported in the server log.  Each request is also appended to a replay log,
+ * one line per request, which tools/stress-testing/request-replay can play
+ * back against a test server, and emitted as a flight recorder event (see
+ * {@link FlightRecorder#REST_REQUEST}).  Passwords in request bodies are
+ * masked before anything is written.
+ */
 public class RequestLogger {
+    private static final Log log = LogFactory.getLog(RequestLogger.class);
+
     public static final RequestLogger LOGGER = new RequestLogger("/var/log/large/requests");
 
     /** The directory under which we write log files. */
     String dir;
 
+    /** The directory under which we write replay logs. */
+    String replayDir;
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    /** Replaces the values of request body fields whose names contain this. */
+    private static final String SECRET_KEY = "password";
+    private static final String MASK = "********";
+
+    /**
+     * The open replay log for each client address.  Each writer is only ever
+     * locked by its own PrintWriter methods, so requests from different
+     * clients never wait for each other.
+     */
+    private final ConcurrentMap<String, PrintWriter> replayWriters = new ConcurrentHashMap<>();
+
+    /** The flight recorder events for the requests in progress on each thread. */
+    private static final ThreadLocal<Deque<FlightRecorder.Event>> events =
+            new ThreadLocal<Deque<FlightRecorder.Event>>() {
+                @Override protected Deque<FlightRecorder.Event> initialValue() {
+                    return new ArrayDeque<>();
+                }
+            };
+
     /** Map of log filenames to Logger objects. */
     Map<String, Logger> loggers = new HashMap<>();
 
     public RequestLogger(String dir) {
         new File(dir).mkdirs();
         this.dir = dir;
+        replayDir = dir + "/replay";
+        new File(replayDir).mkdirs();
     }
 
     /** Gets or creates the Logger for a given filename. */
@@ -64,10 +116,76 @@ public class RequestLogger {
             HttpServletRequest request = context.getRequest();
             String filename = request.getRemoteAddr();
             start(filename, key, "\u001b[33m" + request.getMethod() + " "
-                    + request.getRequestURI() + "\u001b[0m " + message);
+                    + getUriWithQuery(request) + "\u001b[0m " + message);
         } catch (Exception e) { }
     }
 
+    /**
+     * Appends a line for an incoming request to the replay log for its client:
+     * the time in millis, the method, the URI with its query string, and the
+     * request body as JSON (or "-" if the body isn't a JSON object), separated
+     * by tabs.  The input should already have been passed through
+     * {@link #redact(Object)}.
+     */
+    protected void record(RequestContext context, Object input) {
+        try {
+            HttpServletRequest request = context.getRequest();
+            String body = input instanceof Map ? mapper.writeValueAsString(input) : "-";
+            getReplayWriter(request.getRemoteAddr()).println(
+                    System.currentTimeMillis() + "\t" + request.getMethod() + "\t"
+                            + getUriWithQuery(request) + "\t" + body);
+        } catch (Exception e) { }
+    }
+
+    /**
+     * Gets or opens the replay log for a client.  The writer is buffered and
+     * flushes after each line, so the file is never left with a partial line.
+     */
+    private PrintWriter getReplayWriter(String address) throws IOException {
+        PrintWriter writer = replayWriters.get(address);
+        if (writer == null) {
+            PrintWriter newWriter = new PrintWriter(new BufferedWriter(new FileWriter(
+                    replayDir + "/" + address + ".tsv", true /* append */)), true /* autoflush */);
+            writer = replayWriters.putIfAbsent(address, newWriter);
+            if (writer == null) {
+                writer = newWriter;
+            } else {
+                newWriter.close();  // another thread opened it first
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Returns a copy of a request body with the values of any fields named
+     * like "password", at any depth, replaced by a mask.  Anything that isn't
+     * a Map or a List is returned unchanged.
+     */
+    static Object redact(Object input) {
+        if (input instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) input).entrySet()) {
+                boolean secret = entry.getKey() != null
+                        && entry.getKey().toString().toLowerCase().contains(SECRET_KEY);
+                copy.put(entry.getKey(), secret ? MASK : redact(entry.getValue()));
+            }
+            return copy;
+        }
+        if (input instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List<?>) input) {
+                copy.add(redact(item));
+            }
+            return copy;
+        }
+        return input;
+    }
+
+    private static String getUriWithQuery(HttpServletRequest request) {
+        String query = request.getQueryString();
+        return request.getRequestURI() + (query == null ? "" : "?" + query);
+    }
+
     /** Emits an "end" line for a successful reply. */
     protected void reply(RequestContext context, String key, String message) {
         try {
@@ -89,6 +207,11 @@ public class RequestLogger {
 
     /** Emits a "start" line for an incoming request. */
     public void request(RequestContext context, Object obj, String method, Object input) {
+        RequestStats.start();
+        events.get().push(FlightRecorder.REST_REQUEST.begin()
+                .set(0, obj.getClass().getSimpleName()).set(1, method));
+        input = redact(input);
+        record(context, input);
         request(context, obj.getClass().getName() + "." + method,
                 input == null ? "" : "(" + input + ")");
     }
@@ -99,12 +222,62 @@ public class RequestLogger {
 
     /** Emits an "end" line for a successful reply. */
     public void reply(RequestContext context, Object obj, String method, Object result) {
-        reply(context, obj.getClass().getName() + "." + method,
-                result == null ? "" : "" + result);
+        String key = obj.getClass().getName() + "." + method;
+        String stats = describeStats(key);
+        commitEvent(getResultSize(result), false);
+        String message = result == null ? "" : "" + result;
+        reply(context, key, stats.isEmpty() || message.isEmpty()
+                ? stats + message : stats + ": " + message);
     }
 
     /** Emits an "end" line when an exception occurs. */
     public void error(RequestContext context, Object obj, String method, Exception e) {
-        error(context, obj.getClass().getName() + "." + method, e);
+        String key = obj.getClass().getName() + "." + method;
+        describeStats(key);
+        commitEvent(0, true);
+        error(context, key, e);
+    }
+
+    /**
+     * Forgets the requests still in progress on this thread, which should be
+     * none once an HTTP request is done (see RequestCleanupFilter).
+     */
+    public static void reset() {
+        RequestStats.reset();
+        events.get().clear();
+    }
+
+    private void commitEvent(int resultSize, boolean failed) {
+        FlightRecorder.Event event = events.get().poll();
+        if (event != null) {
+            event.set(2, resultSize).set(3, failed).commit();
+        }
+    }
+
+    /** Returns the number of items in a reply: the length of its "results" list, if it has one. */
+    private static int getResultSize(Object result) {
+        if (result instanceof Map && ((Map<?, ?>) result).get("results") instanceof Collection) {
+            return ((Collection<?>) ((Map<?, ?>) result).get("results")).size();
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        return result == null ? 0 : 1;
+    }
+
+    /**
+     * Finishes counting the database work for a request, and describes it for
+     * the "end" line.  Nested requests are counted as part of the outer one.
+     */
+    private String describeStats(String key) {
+        RequestStats stats = RequestStats.finish();
+        if (stats == null) {
+            return "";
+        }
+        if (stats.isSlow()) {
+            log.warn("Slow request " + key + ": " + stats);
+            return "\u001b[31mSLOW\u001b[0m [" + stats + "]";
+        }
+        return "[" + stats + "]";
     }
 }
@@ -0,0 +1,210 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.projectbuendia.openmrs.api.db.hibernate.SqlStatsInterceptor;
+
+import java.util.List;
+
+/**
+ * The database work done while handling one REST request, which RequestLogger
+ * appends to the request's "end" line so that a slow sync can be traced to the
+ * queries behind it.  The statement and entity counts and the query time are
+ * exact for the request's thread (see {@link SqlStatsInterceptor}); the
+ * collection count comes from Hibernate's statistics, which are totals for
+ * the whole server, so it includes the work of any requests that overlap.
+ * Query time covers every query that returns rows, including loads of single
+ * entities and collections.
+ */
+public class RequestStats {
+    private static final Log log = LogFactory.getLog(RequestStats.class);
+
+    /** The defaults for {@link GlobalProperties#SLOW_REQUEST_THRESHOLDS}. */
+    static final String DEFAULT_THRESHOLDS =
+            "statements=500,queryMillis=2000,entities=20000,collections=5000";
+
+    /** Re-reads the thresholds when they are changed in the admin UI. */
+    public static final GlobalPropertyListener THRESHOLDS_LISTENER = new GlobalPropertyListener() {
+        @Override public boolean supportsPropertyName(String propertyName) {
+            return GlobalProperties.SLOW_REQUEST_THRESHOLDS.equals(propertyName);
+        }
+
+        @Override public void globalPropertyChanged(GlobalProperty newValue) {
+            setThresholds(newValue.getPropertyValue());
+        }
+
+        @Override public void globalPropertyDeleted(String propertyName) {
+            setThresholds(null);
+        }
+    };
+
+    private static final RequestStats DEFAULTS = parseThresholds(DEFAULT_THRESHOLDS, null);
+    private static volatile RequestStats thresholds = DEFAULTS;
+    private static volatile Statistics statistics;
+
+    /** The counts at the start of the outermost request on each thread. */
+    private static final ThreadLocal<RequestStats> started = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        @Override protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    public final long statements;
+    public final long queryMillis;
+    public final long entitiesLoaded;
+    public final long collectionsLoaded;
+
+    RequestStats(long statements, long queryMillis, long entitiesLoaded, long collectionsLoaded) {
+        this.statements = statements;
+        this.queryMillis = queryMillis;
+        this.entitiesLoaded = entitiesLoaded;
+        this.collectionsLoaded = collectionsLoaded;
+    }
+
+    /** Turns on Hibernate's statistics, which the collection count needs. */
+    public static void enable() {
+        List<SessionFactory> factories = Context.getRegisteredComponents(SessionFactory.class);
+        if (!factories.isEmpty()) {
+            Statistics s = factories.get(0).getStatistics();
+            s.setStatisticsEnabled(true);
+            statistics = s;
+        }
+        setThresholds(Context.getAdministrationService().getGlobalProperty(
+                GlobalProperties.SLOW_REQUEST_THRESHOLDS));
+    }
+
+    /** Turns Hibernate's statistics back off. */
+    public static void disable() {
+        Statistics s = statistics;
+        statistics = null;
+        if (s != null) {
+            s.setStatisticsEnabled(false);
+        }
+    }
+
+    /**
+     * Starts counting for a request on this thread.  Resources sometimes call
+     * each other, so only the outermost request on a thread is counted.
+     */
+    public static void start() {
+        if (depth.get()[0]++ == 0) {
+            started.set(now());
+        }
+    }
+
+    /**
+     * Stops counting for a request on this thread, returning what it did, or
+     * null if this was a nested request.
+     */
+    public static RequestStats finish() {
+        int[] d = depth.get();
+        if (d[0] == 0 || --d[0] > 0) {
+            return null;
+        }
+        RequestStats start = started.get();
+        started.remove();
+        RequestStats end = now();
+        return new RequestStats(end.statements - start.statements,
+                end.queryMillis - start.queryMillis,
+                end.entitiesLoaded - start.entitiesLoaded,
+                end.collectionsLoaded - start.collectionsLoaded);
+    }
+
+    /**
+     * Forgets any request still being counted on this thread.  Called when
+     * each HTTP request is done, in case a request was started but, because
+     * of an Error or a path that skips the "end" line, never finished;
+     * otherwise this thread would never report a request again.
+     */
+    public static void reset() {
+        depth.get()[0] = 0;
+        started.remove();
+    }
+
+    private static RequestStats now() {
+        Statistics s = statistics;
+        return new RequestStats(SqlStatsInterceptor.getStatementCount(),
+                SqlStatsInterceptor.getQueryMillis(), SqlStatsInterceptor.getEntityLoadCount(),
+                s == null ? 0 : s.getCollectionLoadCount());
+    }
+
+    /** Returns true if any figure is over the configured threshold. */
+    public boolean isSlow() {
+        RequestStats t = thresholds;
+        return statements > t.statements || queryMillis > t.queryMillis
+                || entitiesLoaded > t.entitiesLoaded || collectionsLoaded > t.collectionsLoaded;
+    }
+
+    static void setThresholds(String value) {
+        try {
+            thresholds = value == null || value.trim().isEmpty()
+                    ? DEFAULTS : parseThresholds(value, DEFAULTS);
+        } catch (IllegalArgumentException e) {
+            log.error("Ignoring invalid " + GlobalProperties.SLOW_REQUEST_THRESHOLDS
+                    + " \"" + value + "\"", e);
+        }
+    }
+
+    /**
+     * Parses thresholds like "statements=500,queryMillis=2000", in which any
+     * figure left out takes its default.
+     */
+    static RequestStats parseThresholds(String value, RequestStats defaults) {
+        long statements = Long.MAX_VALUE;
+        long queryMillis = Long.MAX_VALUE;
+        long entities = Long.MAX_VALUE;
+        long collections = Long.MAX_VALUE;
+        if (defaults != null) {
+            statements = defaults.statements;
+            queryMillis = defaults.queryMillis;
+            entities = defaults.entitiesLoaded;
+            collections = defaults.collectionsLoaded;
+        }
+        for (String item : value.split(",")) {
+            String[] parts = item.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name=value: " + item);
+            }
+            long limit = Long.parseLong(parts[1].trim());
+            switch (parts[0].trim()) {
+                case "statements":
+                    statements = limit;
+                    break;
+                case "queryMillis":
+                    queryMillis = limit;
+                    break;
+                case "entities":
+                    entities = limit;
+                    break;
+                case "collections":
+                    collections = limit;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown threshold: " + parts[0]);
+            }
+        }
+        return new RequestStats(statements, queryMillis, entities, collections);
+    }
+
+    @Override public String toString() {
+        return statements + " statements, " + queryMillis + " ms in queries, "
+                + entitiesLoaded + " entities, " + collectionsLoaded + " collections";
+    }
+}
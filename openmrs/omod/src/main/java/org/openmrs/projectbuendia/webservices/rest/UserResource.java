@@ -34,10 +34,13 @@ import org.openmrs.module.webservices.rest.web.resource.api.Retrievable;
 import org.openmrs.module.webservices.rest.web.resource.api.Searchable;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.projectbuendia.Utils;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -47,6 +50,9 @@ import java.util.List;
  * <p>Expected behavior:
  * <ul>
  * <li>GET /user returns all users ({@link #getAll(RequestContext)})
+ * <li>GET /user?sm=[millis] returns just the users added, changed, or retired since the
+ *     given time, which should be the "snapshotTime" from a previous response
+ *     ({@link #getAll(RequestContext)})
  * <li>GET /user/[UUID] returns a single user ({@link #retrieve(String, RequestContext)})
  * <li>GET /user?q=[QUERY] returns users whose full name contains the query string
  *     ({@link #search(RequestContext)})
@@ -63,6 +69,10 @@ import java.util.List;
  * }
  * </pre>
  *
+ * <p>Lists of users also contain a "snapshotTime" (see
+ * {@link AbstractReadOnlyResource#search(RequestContext)}).  In a list fetched with "sm",
+ * users that have been retired appear as just {"user_id": "...", "retired": true}.
+ *
  * <p>User creation expects a slightly different format:
  * <pre>
  * {
@@ -93,6 +103,7 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
     private static final String FAMILY_NAME = "family_name";
     private static final String GIVEN_NAME = "given_name";
     private static final String PASSWORD = "password";
+    private static final String RETIRED = "retired";
 
     // Sentinel for unknown values
     private static final String UNKNOWN = "(UNKNOWN)";
@@ -125,7 +136,7 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
     public SimpleObject getAll(RequestContext context) throws ResponseException {
         try {
             logger.request(context, this, "getAll");
-            SimpleObject result = getAllInner();
+            SimpleObject result = getAllInner(context);
             logger.reply(context, this, "getAll", result);
             return result;
         } catch (Exception e) {
@@ -134,45 +145,69 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
         }
     }
 
-    /** Returns all Providers. */
-    private SimpleObject getAllInner() throws ResponseException {
-        List<Provider> providers;
-        // Returning providers is not a thread-safe operation as it may add the guest user
-        // to the database, which is not idempotent.
-        synchronized(this) {
-            providers = providerService.getAllProviders(false); // omit retired
-            addGuestIfNotPresent(providers);
+    /**
+     * Returns all Providers or, if the "sm" parameter is given, the Providers modified at or
+     * after that time (in epoch millis), read in a single database snapshot.
+     */
+    private SimpleObject getAllInner(RequestContext context) throws ResponseException {
+        String parameter = context.getParameter("sm");
+        // Fail fast throwing number format exception to aid debugging.
+        final Date since = parameter == null ? null : new Date(Long.parseLong(parameter));
+        if (since == null) {
+            // The directory was loaded in its own snapshot, so its snapshot time is the
+            // right starting point for the client's next incremental fetch.
+            ProviderDirectory directory = getDirectoryWithGuest();
+            SimpleObject result = getSimpleObjectWithResults(directory.getEntries());
+            result.add("snapshotTime", Utils.toIso8601(new Date(directory.getSnapshotTime())));
+            return result;
         }
-        return getSimpleObjectWithResults(providers);
+        final ProjectBuendiaService service = Context.getService(ProjectBuendiaService.class);
+        return service.readSnapshot(new ProjectBuendiaService.SnapshotReader<SimpleObject>() {
+            @Override public SimpleObject read(long snapshotTime) {
+                List<SimpleObject> jsonResults = new ArrayList<>();
+                for (Provider provider : service.getProvidersModifiedSince(since)) {
+                    jsonResults.add(provider.isRetired() ? retiredProviderToJson(provider)
+                            : providerToJson(provider));
+                }
+                SimpleObject result = new SimpleObject();
+                result.add("results", jsonResults);
+                result.add("snapshotTime", Utils.toIso8601(new Date(snapshotTime)));
+                return result;
+            }
+        });
     }
 
-    /** Creates a Provider named "Guest User" if one doesn't already exist. */
-    private void addGuestIfNotPresent(List<Provider> providers) {
-        boolean guestFound = false;
-        for (Provider provider : providers) {
-            // TODO/robustness: Use a fixed UUID instead of searching for
-            // anything with a matching name.
-            if (provider.getName().equals(GUEST_FULL_NAME)) {
-                guestFound = true;
-                break;
-            }
+    /**
+     * Returns the current {@link ProviderDirectory}, first creating a Provider named
+     * "Guest User" if the directory doesn't have one.
+     */
+    private ProviderDirectory getDirectoryWithGuest() {
+        ProviderDirectory directory = ProviderDirectory.get();
+        // TODO/robustness: Use a fixed UUID instead of searching for
+        // anything with a matching name.
+        if (directory.getByName(GUEST_FULL_NAME) == null) {
+            addGuestIfNotPresent();
+            directory = ProviderDirectory.get();
         }
+        return directory;
+    }
 
-        if (!guestFound) {
-                SimpleObject guestDetails = new SimpleObject();
-                guestDetails.put(GIVEN_NAME, GUEST_GIVEN_NAME);
-                guestDetails.put(FAMILY_NAME, GUEST_FAMILY_NAME);
-                guestDetails.put(USER_NAME, GUEST_USER_NAME);
-                guestDetails.put(PASSWORD, GUEST_PASSWORD);
-            synchronized (guestAddLock) {
-                // Fetch again to avoid duplication in case another thread has
-                // added Guest User, but use the UserService for the check to
-                // avoid Hibernate cache issues.
-                User guestUser = userService.getUserByUsername(GUEST_USER_NAME);
-                if (guestUser == null) {
-                    providers.add(createFromSimpleObject(guestDetails));
-                }
+    /** Creates the guest user if it doesn't already exist. */
+    private void addGuestIfNotPresent() {
+        synchronized (guestAddLock) {
+            // Fetch again to avoid duplication in case another thread has
+            // added Guest User, but use the UserService for the check to
+            // avoid Hibernate cache issues.
+            User guestUser = userService.getUserByUsername(GUEST_USER_NAME);
+            if (guestUser != null) {
+                return;
             }
+            SimpleObject guestDetails = new SimpleObject();
+            guestDetails.put(GIVEN_NAME, GUEST_GIVEN_NAME);
+            guestDetails.put(FAMILY_NAME, GUEST_FAMILY_NAME);
+            guestDetails.put(USER_NAME, GUEST_USER_NAME);
+            guestDetails.put(PASSWORD, GUEST_PASSWORD);
+            createFromSimpleObject(guestDetails);
         }
     }
 
@@ -219,6 +254,9 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
         provider.setPerson(person);
         provider.setName(fullName);
         providerService.saveProvider(provider);
+        // Don't wait for the commit to be noticed, so that this request and the
+        // client's next one both see the new provider.
+        ProviderDirectory.invalidate();
 
         log.info("Created user " + fullName);
 
@@ -247,6 +285,11 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
     }
 
     private Object retrieveInner(String uuid) throws ResponseException {
+        ProviderDirectory.Entry entry = ProviderDirectory.get().getByUuid(uuid);
+        if (entry != null) {
+            return entryToJson(entry);
+        }
+        // Retired providers aren't in the directory.
         Provider provider = providerService.getProviderByUuid(uuid);
         if (provider == null) {
             throw new ObjectNotFoundException();
@@ -277,19 +320,13 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
     private SimpleObject searchInner(RequestContext requestContext) throws ResponseException {
         // Partial string query for searches.
         String query = requestContext.getParameter("q");
-
-        // Retrieve all patients and filter the list based on the query.
-        List<Provider> filteredProviders = new ArrayList<>();
-
-        // Perform a substring search on username.
-        for (Provider provider : providerService.getAllProviders(false)) {
-            if (StringUtils.containsIgnoreCase(provider.getName(), query)) {
-                filteredProviders.add(provider);
-            }
+        if (query == null) {
+            // The REST framework treats any parameter, such as "sm", as a search.
+            return getAllInner(requestContext);
         }
 
-        addGuestIfNotPresent(filteredProviders);
-        return getSimpleObjectWithResults(filteredProviders);
+        // Perform a substring search on the provider name.
+        return getSimpleObjectWithResults(getDirectoryWithGuest().search(query));
     }
 
     /** Throws an exception if the given SimpleObject is missing any required fields. */
@@ -308,19 +345,39 @@ public class UserResource implements Listable, Searchable, Retrievable, Creatabl
     }
 
     /**
-     * Converts a list of Providers into a SimpleObject in the form
+     * Converts a list of directory entries into a SimpleObject in the form
      * {"results": [...]} with an array of SimpleObjects, one for each Provider.
      */
-    private SimpleObject getSimpleObjectWithResults(List<Provider> providers) {
+    private SimpleObject getSimpleObjectWithResults(List<ProviderDirectory.Entry> entries) {
         List<SimpleObject> jsonResults = new ArrayList<>();
-        for (Provider provider : providers) {
-            jsonResults.add(providerToJson(provider));
+        for (ProviderDirectory.Entry entry : entries) {
+            jsonResults.add(entryToJson(entry));
         }
         SimpleObject list = new SimpleObject();
         list.add("results", jsonResults);
         return list;
     }
 
+    /** Builds a SimpleObject describing the given directory entry. */
+    private SimpleObject entryToJson(ProviderDirectory.Entry entry) {
+        SimpleObject jsonForm = new SimpleObject();
+        jsonForm.add(USER_ID, entry.uuid);
+        jsonForm.add(FULL_NAME, entry.name);
+        if (entry.givenName != null || entry.familyName != null) {
+            jsonForm.add(GIVEN_NAME, entry.givenName);
+            jsonForm.add(FAMILY_NAME, entry.familyName);
+        }
+        return jsonForm;
+    }
+
+    /** Builds the placeholder that tells clients to delete their copy of a retired Provider. */
+    private SimpleObject retiredProviderToJson(Provider provider) {
+        SimpleObject jsonForm = new SimpleObject();
+        jsonForm.add(USER_ID, provider.getUuid());
+        jsonForm.add(RETIRED, true);
+        return jsonForm;
+    }
+
     /** Builds a SimpleObject describing the given Provider. */
     private SimpleObject providerToJson(Provider provider) {
         SimpleObject jsonForm = new SimpleObject();
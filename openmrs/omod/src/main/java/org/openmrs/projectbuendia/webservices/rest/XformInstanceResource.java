@@ -27,6 +27,7 @@ import org.openmrs.module.webservices.rest.web.response.IllegalPropertyException
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.xforms.XformsQueueProcessor;
 import org.openmrs.module.xforms.util.XformsUtil;
+import org.openmrs.projectbuendia.FlightRecorder;
 import org.openmrs.projectbuendia.Utils;
 import org.projectbuendia.openmrs.webservices.rest.RestController;
 import org.w3c.dom.Document;
@@ -43,6 +44,8 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.openmrs.projectbuendia.webservices.rest.XmlUtil.*;
 
@@ -92,6 +95,9 @@ public class XformInstanceResource implements Creatable {
 
     private static final XformsQueueProcessor processor = new XformsQueueProcessor();
 
+    /** Finds the form ID, in the id attribute of the root "form" element of an instance. */
+    private static final Pattern FORM_ID_PATTERN = Pattern.compile("<form\\b[^>]*?\\sid=\"([^\"]*)\"");
+
     @SuppressWarnings("unused")
     private static final Log getLog() {
         // TODO: Figure out why getLog(XformInstanceResource.class) gives no
@@ -127,11 +133,20 @@ public class XformInstanceResource implements Creatable {
 
     /** Accepts a submitted form instance. */
     private Object createInner(SimpleObject post, RequestContext context) throws ResponseException {
+        FlightRecorder.Event event = FlightRecorder.XFORM_PROCESSING.begin();
         try {
             // We have to fix a few things before OpenMRS will accept the form.
+            long startMillis = System.currentTimeMillis();
             String xml = completeXform(convertIdIfNecessary(post));
+            Matcher matcher = FORM_ID_PATTERN.matcher(xml);
+            event.set(0, matcher.find() ? matcher.group(1) : "");
+            long preparedMillis = System.currentTimeMillis();
+            event.set(1, preparedMillis - startMillis);
             File file = File.createTempFile("projectbuendia", null);
+            // The xforms module transforms the instance to HL7 and saves it,
+            // with no way to time the two steps separately.
             processor.processXForm(xml, file.getAbsolutePath(), true, context.getRequest());
+            event.set(2, System.currentTimeMillis() - preparedMillis);
         } catch (IOException e) {
             throw new GenericRestException("Error storing xform data", e);
         } catch (ResponseException e) {
@@ -139,6 +154,8 @@ public class XformInstanceResource implements Creatable {
             throw e;
         } catch (Exception e) {
             throw new ConversionException("Error processing xform data", e);
+        } finally {
+            event.commit();
         }
         // FIXME
         return post;
@@ -0,0 +1,50 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.openmrs.web;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.projectbuendia.webservices.rest.ChartStructure;
+import org.openmrs.projectbuendia.webservices.rest.LocationResource;
+import org.openmrs.projectbuendia.webservices.rest.RequestStats;
+import org.projectbuendia.openmrs.ProjectBuendiaActivator;
+
+/**
+ * Module activator that also performs startup work needing the REST layer,
+ * which lives in the omod and so can't be reached from the API module.
+ */
+public class ProjectBuendiaWebActivator extends ProjectBuendiaActivator {
+
+    @Override
+    public void started() {
+        super.started();
+        Context.getAdministrationService().addGlobalPropertyListener(
+                ChartStructure.CHART_UUIDS_LISTENER);
+        Context.getAdministrationService().addGlobalPropertyListener(
+                RequestStats.THRESHOLDS_LISTENER);
+        RequestStats.enable();
+        try {
+            LocationResource.ensureBaseLocationsExist();
+        } catch (Exception e) {
+            log.error("Failed to create the root location and zones", e);
+        }
+    }
+
+    @Override
+    public void willStop() {
+        super.willStop();
+        Context.getAdministrationService().removeGlobalPropertyListener(
+                ChartStructure.CHART_UUIDS_LISTENER);
+        Context.getAdministrationService().removeGlobalPropertyListener(
+                RequestStats.THRESHOLDS_LISTENER);
+        RequestStats.disable();
+    }
+}
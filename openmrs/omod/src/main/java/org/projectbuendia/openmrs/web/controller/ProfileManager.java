@@ -15,7 +15,10 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.projectbuendia.ClientConceptNamer;
+import org.openmrs.projectbuendia.webservices.rest.ChartStructure;
 import org.openmrs.projectbuendia.webservices.rest.GlobalProperties;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
@@ -154,6 +157,7 @@ public class ProfileManager {
     void applyProfile(File file, ModelMap model) {
         List<String> lines = new ArrayList<>();
         if (execute(APPLY_CMD, file, lines)) {
+            invalidateCaches();
             setCurrentProfile(file.getName());
             model.addAttribute("success", "apply");
         } else {
@@ -162,6 +166,23 @@ public class ProfileManager {
         }
     }
 
+    /**
+     * Forgets everything cached from the tables that buendia-profile-apply
+     * rewrites.  The script changes them with direct SQL, so none of the
+     * usual change notifications fire.  This runs before the current profile
+     * is set, so that whatever rebuilds on that change reads the new data.
+     */
+    void invalidateCaches() {
+        // Hibernate's second-level cache holds concepts, forms and fields
+        // (see MetadataCacheConfigurer), so it has to go first.
+        for (SessionFactory factory : Context.getRegisteredComponents(SessionFactory.class)) {
+            factory.getCache().evictEntityRegions();
+            factory.getCache().evictCollectionRegions();
+        }
+        ClientConceptNamer.invalidate();
+        ChartStructure.invalidate();
+    }
+
     /** Deletes a profile. */
     void deleteProfile(File file, ModelMap model) {
         if (file.getName().equals(getCurrentProfile())) {
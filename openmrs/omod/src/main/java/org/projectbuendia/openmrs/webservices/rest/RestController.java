@@ -13,14 +13,34 @@ package org.projectbuendia.openmrs.webservices.rest;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceController;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.projectbuendia.webservices.rest.CborWriter;
+import org.openmrs.projectbuendia.webservices.rest.ChangeFeed;
+import org.openmrs.projectbuendia.webservices.rest.ConceptCatalog;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+
+import static org.openmrs.projectbuendia.webservices.rest.RequestLogger.LOGGER;
 
 /**
  * Controller for the REST resources in this module. This implicitly picks up
- * all the resources with the Resource annotation.
+ * all the resources with the Resource annotation.  The handlers defined here
+ * take precedence over the generic ones for the paths they match; the CBOR
+ * ones only match requests whose Accept header asks for CBOR.
  */
 @Controller
 @RequestMapping("/rest/" + RestController.REST_VERSION_1_AND_NAMESPACE)
@@ -28,6 +48,8 @@ public class RestController extends MainResourceController {
 
     public static final String REST_VERSION_1_AND_NAMESPACE =
             RestConstants.VERSION_1 + "/projectbuendia";
+    private static final int DEFAULT_CHANGES_TIMEOUT_SECONDS = 30;
+    private static final int MAX_CHANGES_TIMEOUT_SECONDS = 60;
     private final Log log = LogFactory.getLog(getClass());
 
     public RestController() {
@@ -41,4 +63,87 @@ public class RestController extends MainResourceController {
     public String getNamespace() {
         return REST_VERSION_1_AND_NAMESPACE;
     }
+
+    /**
+     * Serves the list of all chart concepts from the precomputed
+     * {@link ConceptCatalog}, bypassing ConceptResource and the generic
+     * conversion of each concept to JSON.
+     */
+    @RequestMapping(value = "/concept", method = RequestMethod.GET)
+    public void getConcepts(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!Context.isAuthenticated()) {
+            throw new APIAuthenticationException("Not authenticated");
+        }
+        RequestContext context = new RequestContext();
+        context.setRequest(request);
+        byte[] json;
+        try {
+            LOGGER.request(context, this, "getConcepts");
+            json = ConceptCatalog.getJson(request.getParameter("locales"));
+            LOGGER.reply(context, this, "getConcepts", json.length + " bytes");
+        } catch (RuntimeException e) {
+            LOGGER.error(context, this, "getConcepts", e);
+            throw e;
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+    }
+
+    /**
+     * Long-polls for changes; see {@link ChangeFeed} for the response format.
+     * @param epoch the "epoch" from the previous response, if any
+     * @param since the "seq" from the previous response; omit it to get the
+     *     current sequence numbers immediately
+     * @param timeout the maximum number of seconds to wait (at most 60)
+     */
+    @RequestMapping(value = "/changes", method = RequestMethod.GET)
+    @ResponseBody
+    public SimpleObject getChanges(
+            @RequestParam(value = "epoch", required = false) Long epoch,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "timeout", required = false) Integer timeout) {
+        if (!Context.isAuthenticated()) {
+            throw new APIAuthenticationException("Not authenticated");
+        }
+        long timeoutMillis = 1000L * Math.min(Math.max(
+                timeout == null ? DEFAULT_CHANGES_TIMEOUT_SECONDS : timeout, 0),
+                MAX_CHANGES_TIMEOUT_SECONDS);
+        return ChangeFeed.await(epoch, since == null ? -1 : since, timeoutMillis);
+    }
+
+    /**
+     * Lists patients in CBOR instead of JSON, for clients that send
+     * "Accept: application/cbor".  See {@link CborWriter}.
+     */
+    @RequestMapping(value = "/patient", method = RequestMethod.GET,
+            headers = "Accept=" + CborWriter.MEDIA_TYPE)
+    public void getPatientsAsCbor(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ResponseException {
+        writeCbor(get("patient", request, response), response);
+    }
+
+    /** Like {@link #getPatientsAsCbor}, for the "patientencounters" collection. */
+    @RequestMapping(value = "/patientencounters", method = RequestMethod.GET,
+            headers = "Accept=" + CborWriter.MEDIA_TYPE)
+    public void getPatientEncountersAsCbor(
+            HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ResponseException {
+        writeCbor(get("patientencounters", request, response), response);
+    }
+
+    /** Like {@link #getPatientsAsCbor}, for the "order" collection. */
+    @RequestMapping(value = "/order", method = RequestMethod.GET,
+            headers = "Accept=" + CborWriter.MEDIA_TYPE)
+    public void getOrdersAsCbor(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ResponseException {
+        writeCbor(get("order", request, response), response);
+    }
+
+    private void writeCbor(Object result, HttpServletResponse response) throws IOException {
+        response.setContentType(CborWriter.MEDIA_TYPE);
+        new CborWriter(new BufferedOutputStream(response.getOutputStream()))
+                .writeDocument(result);
+    }
 }
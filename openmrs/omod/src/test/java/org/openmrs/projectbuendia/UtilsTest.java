@@ -15,6 +15,8 @@ import org.junit.Test;
 import org.openmrs.Concept;
 
 import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -27,4 +29,20 @@ public class UtilsTest {
         String[] expected = {"a1", "a2", "a2a", "a02b", "a2b", "a11", "a11a", "b1"};
         assertArrayEquals(expected, sorted);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDateAppendersMatchFormats() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            // Any time between about 1900 and 2100.
+            long millis = (long) ((random.nextDouble() * 2 - 1) * 4.1e12);
+            Date date = new Date(millis);
+            assertEquals(Utils.FORMAT.format(date),
+                    Utils.appendIso8601(new StringBuilder(), millis).toString());
+            assertEquals(Utils.YYYYMMDD_FORMAT.format(date),
+                    Utils.appendYyyyMmDd(new StringBuilder(), millis).toString());
+            assertEquals(Utils.SPREADSHEET_FORMAT.format(date),
+                    Utils.appendSpreadsheetDateTime(new StringBuilder(), millis).toString());
+        }
+    }
+}
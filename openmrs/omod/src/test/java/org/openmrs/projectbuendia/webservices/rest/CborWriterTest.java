@@ -0,0 +1,58 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.junit.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CborWriterTest {
+
+    @Test
+    public void writeScalars() throws Exception {
+        assertEquals("d90100" + "86" + "01" + "20" + "1901f4" + "f5" + "f6" + "fb3ff8000000000000",
+                toHex(Arrays.asList(1, -1, 500L, true, null, 1.5)));
+    }
+
+    @Test
+    public void repeatedStringsAreReferenced() throws Exception {
+        SimpleObject obs = new SimpleObject();
+        obs.put("a", Arrays.asList("uuid", "uuid", "uuid"));
+        // "a" is too short to be worth a reference; "uuid" gets index 0.
+        assertEquals("d90100" + "a1" + "6161" + "83" + "6475756964" + "d81900" + "d81900",
+                toHex(obs));
+    }
+
+    @Test
+    public void referenceThresholdGrowsWithIndex() {
+        assertTrue(CborWriter.isWorthReferencing(3, 23));
+        assertFalse(CborWriter.isWorthReferencing(3, 24));
+        assertTrue(CborWriter.isWorthReferencing(4, 255));
+        assertFalse(CborWriter.isWorthReferencing(4, 256));
+    }
+
+    private String toHex(Object value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CborWriter(out).writeDocument(value);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : out.toByteArray()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
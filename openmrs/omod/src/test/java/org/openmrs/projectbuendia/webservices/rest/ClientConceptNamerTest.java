@@ -13,8 +13,10 @@ import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
 import org.openmrs.projectbuendia.ClientConceptNamer;
+import org.projectbuendia.openmrs.api.ChangeNotifier;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Locale;
 
 import static org.junit.Assert.assertEquals;
@@ -85,6 +87,20 @@ public class ClientConceptNamerTest {
         assertEquals("name fr", name);
     }
 
+    @Test
+    public void testConceptNameMemoizedUntilNamesChange() {
+        Concept concept = new Concept(9001);
+        concept.setNames(Arrays.asList(makePreferred("old name", ClientConceptNamer.DEFAULT)));
+        ClientConceptNamer namer = new ClientConceptNamer(ClientConceptNamer.DEFAULT);
+        assertEquals("old name", namer.getClientName(concept));
+
+        concept.setNames(Arrays.asList(makePreferred("new name", ClientConceptNamer.DEFAULT)));
+        assertEquals("old name", namer.getClientName(concept));
+
+        ChangeNotifier.fireChanges(Collections.<Class<?>>singleton(ConceptName.class));
+        assertEquals("new name", namer.getClientName(concept));
+    }
+
     private ConceptName makePreferred(String s, Locale l) {
         ConceptName enClient = new ConceptName(s, l);
         enClient.setLocalePreferred(true);
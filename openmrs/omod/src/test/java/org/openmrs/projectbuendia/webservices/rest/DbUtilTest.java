@@ -0,0 +1,68 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.projectbuendia.openmrs.api.ProjectBuendiaService;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests for DbUtil's helpers that change the database. */
+public class DbUtilTest extends BaseModuleContextSensitiveTest {
+
+    @Test
+    public void setPersonAttributeValue_shouldShowUpInIncrementalSync() throws Exception {
+        PersonAttributeType type = DbUtil.getAssignedLocationAttributeType();
+        Patient patient = Context.getPatientService().getPatient(2);
+        DbUtil.setPersonAttributeValue(patient, type, "1");
+        Context.flushSession();
+
+        // Let the clock move on, so that only the move itself is at or after this time.
+        Thread.sleep(10);
+        Date beforeMove = new Date();
+        DbUtil.setPersonAttributeValue(patient, type, "2");
+        Context.flushSession();
+
+        assertEquals("2", DbUtil.getPersonAttributeValue(patient, type));
+        int voided = 0;
+        for (PersonAttribute attribute : patient.getAttributes()) {
+            if (attribute.getAttributeType().equals(type) && attribute.isVoided()) {
+                assertEquals("1", attribute.getValue());
+                voided++;
+            }
+        }
+        assertEquals(1, voided);
+
+        List<Patient> modified = Context.getService(ProjectBuendiaService.class)
+                .getPatientsModifiedSince(beforeMove);
+        assertTrue(modified.contains(patient));
+    }
+
+    @Test
+    public void setPersonAttributeValue_shouldKeepAnUnchangedValue() throws Exception {
+        PersonAttributeType type = DbUtil.getAssignedLocationAttributeType();
+        Patient patient = Context.getPatientService().getPatient(2);
+        DbUtil.setPersonAttributeValue(patient, type, "1");
+        PersonAttribute attribute = patient.getAttribute(type);
+        DbUtil.setPersonAttributeValue(patient, type, "1");
+        assertTrue(attribute == patient.getAttribute(type));
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests the PatientResource paths that run in read-only reads. */
+public class PatientResourceTest extends BaseModuleContextSensitiveTest {
+
+    @Test
+    public void retrieve_shouldCreateTheTypesItNeedsOutsideTheRead() throws Exception {
+        Patient patient = Context.getPatientService().getPatient(2);
+
+        SimpleObject json = (SimpleObject) new PatientResource().retrieve(
+                patient.getUuid(), newContext(new MockHttpServletRequest()));
+        assertEquals(patient.getUuid(), json.get("uuid"));
+
+        // The types were created first, so they were written despite the read.
+        Context.flushSession();
+        Context.clearSession();
+        assertNotNull(Context.getPatientService().getPatientIdentifierTypeByName(
+                DbUtil.MSF_IDENTIFIER));
+        assertNotNull(Context.getPersonService().getPersonAttributeTypeByUuid(
+                DbUtil.ASSIGNED_LOCATION_PERSON_ATTRIBUTE_TYPE_UUID));
+    }
+
+    @Test
+    public void search_shouldFindPatientsByNameInARead() throws Exception {
+        Patient patient = Context.getPatientService().getPatient(2);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("q", patient.getGivenName());
+
+        SimpleObject result = new PatientResource().search(newContext(request));
+        boolean found = false;
+        for (Object item : (List<?>) result.get("results")) {
+            found |= patient.getUuid().equals(((SimpleObject) item).get("uuid"));
+        }
+        assertTrue(found);
+        assertNotNull(Context.getPatientService().getPatientIdentifierTypeByName(
+                DbUtil.MSF_IDENTIFIER));
+    }
+
+    private static RequestContext newContext(MockHttpServletRequest request) {
+        RequestContext context = new RequestContext();
+        context.setRequest(request);
+        return context;
+    }
+}
@@ -0,0 +1,223 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Catches N+1 query regressions in the REST endpoints, which are invisible to
+ * unit tests.  Each endpoint is called against a small and then a larger
+ * generated ward (see {@link WardGenerator}) in the in-memory database, and
+ * the SQL statements and entity rows that Hibernate reports are compared.
+ * For each extra patient, an endpoint may cost no more than its budget.
+ *
+ * <p>The budgets are a ratchet.  When a change makes an endpoint cheaper,
+ * lower its budget to the new cost (the measured costs are logged) so that
+ * it can't silently regress; never raise a budget to make a change pass.
+ * Endpoints whose cost should not depend on the number of patients at all
+ * have budgets of zero.
+ *
+ * <p>XForm instance submission is not covered: the XForms module processes
+ * instances through its HL7 queue and its own tables, which are not set up
+ * in the test database.  The JSON encounter submission, which saves
+ * observations the same way, is covered instead.
+ */
+public class QueryCountTest extends BaseModuleContextSensitiveTest {
+    private static final Log log = LogFactory.getLog(QueryCountTest.class);
+
+    private static final long SEED = 42;
+    private static final int QUESTIONS = 12;
+    private static final int SMALL_WARD = 4;
+    private static final int LARGE_WARD = 12;
+    private static final int ENCOUNTERS_PER_PATIENT = 2;
+    private static final int OBS_PER_ENCOUNTER = 5;
+    private static final int ORDERS_PER_PATIENT = 1;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    /** A call to one endpoint. */
+    private interface Endpoint {
+        void call() throws Exception;
+    }
+
+    /** What Hibernate did during one call. */
+    private static class Cost {
+        final long statements;
+        final long rows;
+
+        Cost(Statistics statistics) {
+            statements = statistics.getPrepareStatementCount();
+            rows = statistics.getEntityLoadCount();
+        }
+    }
+
+    /** An endpoint and the most that each extra patient may add to its cost. */
+    private static class Budget {
+        final String name;
+        final double statementsPerPatient;
+        final double rowsPerPatient;
+        final Endpoint endpoint;
+
+        Budget(String name, double statementsPerPatient, double rowsPerPatient, Endpoint endpoint) {
+            this.name = name;
+            this.statementsPerPatient = statementsPerPatient;
+            this.rowsPerPatient = rowsPerPatient;
+            this.endpoint = endpoint;
+        }
+    }
+
+    private List<Budget> getBudgets(WardGenerator ward, final String patientUuid) {
+        final String questionUuid = ward.getQuestions().get(0).getUuid();  // a numeric question
+        List<Budget> budgets = new ArrayList<>();
+        // The lists are read by a fixed number of projection queries, which load
+        // no entities.  The patient list takes its zones from the LocationTree.
+        budgets.add(new Budget("patient", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new PatientResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("patientencounters", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new PatientEncountersResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("order", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new OrderResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("location", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new LocationResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("concept", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new ConceptResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("chart", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new ChartResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("xform", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                RequestContext context = newContext();
+                context.setRepresentation(Representation.FULL);
+                new XformResource().getAll(context);
+            }
+        }));
+        budgets.add(new Budget("user", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                new UserResource().getAll(newContext());
+            }
+        }));
+        budgets.add(new Budget("encounter submission", 0, 0, new Endpoint() {
+            @Override public void call() throws Exception {
+                SimpleObject observation = new SimpleObject();
+                observation.add("question_uuid", questionUuid);
+                observation.add("answer_number", 37.5);
+                SimpleObject post = new SimpleObject();
+                post.add("uuid", patientUuid);
+                post.add("timestamp", "1420070400");
+                post.add("observations", Collections.singletonList(observation));
+                new PatientEncountersResource().createInner(post, newContext());
+            }
+        }));
+        return budgets;
+    }
+
+    @Test
+    public void endpointCosts_shouldNotGrowFasterThanBudgets() throws Exception {
+        WardGenerator ward = new WardGenerator(SEED, QUESTIONS);
+        ward.addPatients(SMALL_WARD, ENCOUNTERS_PER_PATIENT, OBS_PER_ENCOUNTER, ORDERS_PER_PATIENT);
+        String patientUuid = Context.getPatientService()
+                .getPatients(null, "KH.0", null, true).get(0).getUuid();
+        List<Budget> budgets = getBudgets(ward, patientUuid);
+        List<Cost> smallCosts = measure(budgets);
+
+        ward.addPatients(LARGE_WARD - SMALL_WARD,
+                ENCOUNTERS_PER_PATIENT, OBS_PER_ENCOUNTER, ORDERS_PER_PATIENT);
+        List<Cost> largeCosts = measure(budgets);
+
+        StringBuilder failures = new StringBuilder();
+        for (int i = 0; i < budgets.size(); i++) {
+            Budget budget = budgets.get(i);
+            Cost small = smallCosts.get(i);
+            Cost large = largeCosts.get(i);
+            double statementsPerPatient =
+                    (large.statements - small.statements) / (double) (LARGE_WARD - SMALL_WARD);
+            double rowsPerPatient = (large.rows - small.rows) / (double) (LARGE_WARD - SMALL_WARD);
+            String summary = String.format(
+                    "%s: %d -> %d statements (%.2f per patient, budget %.2f),"
+                            + " %d -> %d rows (%.2f per patient, budget %.2f)",
+                    budget.name, small.statements, large.statements,
+                    statementsPerPatient, budget.statementsPerPatient,
+                    small.rows, large.rows, rowsPerPatient, budget.rowsPerPatient);
+            log.info(summary);
+            if (statementsPerPatient > budget.statementsPerPatient
+                    || rowsPerPatient > budget.rowsPerPatient) {
+                failures.append("\n").append(summary);
+            }
+        }
+        assertTrue("Over budget:" + failures, failures.length() == 0);
+    }
+
+    /**
+     * Measures one call to each endpoint.  Each endpoint is called once
+     * beforehand, so that caches are warm and only the steady-state cost is
+     * measured, and each call starts with an empty session, as a request does.
+     */
+    private List<Cost> measure(List<Budget> budgets) throws Exception {
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        List<Cost> costs = new ArrayList<>();
+        for (Budget budget : budgets) {
+            budget.endpoint.call();
+            Context.flushSession();
+            Context.clearSession();
+
+            statistics.clear();
+            budget.endpoint.call();
+            Context.flushSession();  // count the writes, if any
+            costs.add(new Cost(statistics));
+            Context.clearSession();
+        }
+        statistics.setStatisticsEnabled(false);
+        return costs;
+    }
+
+    private static RequestContext newContext() {
+        RequestContext context = new RequestContext();
+        context.setRequest(new MockHttpServletRequest());
+        return context;
+    }
+}
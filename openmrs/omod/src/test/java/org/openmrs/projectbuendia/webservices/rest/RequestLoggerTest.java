@@ -0,0 +1,48 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.junit.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestLoggerTest {
+    @Test
+    public void redact_shouldMaskPasswordsAtAnyDepth() throws Exception {
+        SimpleObject user = new SimpleObject()
+                .add("user_name", "nurse")
+                .add("password", "Secret123")
+                .add("others", Arrays.asList(new SimpleObject().add("newPassword", "Other456")));
+
+        Map<?, ?> redacted = (Map<?, ?>) RequestLogger.redact(user);
+        assertEquals("nurse", redacted.get("user_name"));
+        assertEquals("********", redacted.get("password"));
+        Map<?, ?> other = (Map<?, ?>) ((List<?>) redacted.get("others")).get(0);
+        assertEquals("********", other.get("newPassword"));
+        assertTrue(redacted.toString().indexOf("Secret123") < 0);
+
+        // The request itself is left as it was.
+        assertEquals("Secret123", user.get("password"));
+    }
+
+    @Test
+    public void redact_shouldPassOtherValuesThrough() throws Exception {
+        assertEquals(null, RequestLogger.redact(null));
+        assertEquals("abc", RequestLogger.redact("abc"));
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestStatsTest {
+    @Test
+    public void parseThresholds_shouldKeepDefaultsForMissingNames() throws Exception {
+        RequestStats defaults = RequestStats.parseThresholds(RequestStats.DEFAULT_THRESHOLDS, null);
+        RequestStats t = RequestStats.parseThresholds(" statements = 10 ,entities=20", defaults);
+        assertEquals(10, t.statements);
+        assertEquals(20, t.entitiesLoaded);
+        assertEquals(defaults.queryMillis, t.queryMillis);
+        assertEquals(defaults.collectionsLoaded, t.collectionsLoaded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThresholds_shouldRejectUnknownNames() throws Exception {
+        RequestStats.parseThresholds("rows=10", null);
+    }
+
+    @Test
+    public void isSlow_shouldCompareEachFigureWithItsThreshold() throws Exception {
+        try {
+            RequestStats.setThresholds("statements=10,queryMillis=10,entities=10,collections=10");
+            assertFalse(new RequestStats(10, 10, 10, 10).isSlow());
+            assertTrue(new RequestStats(11, 0, 0, 0).isSlow());
+            assertTrue(new RequestStats(0, 0, 0, 11).isSlow());
+        } finally {
+            RequestStats.setThresholds(null);
+        }
+    }
+
+    @Test
+    public void finish_shouldOnlyReportTheOutermostRequest() throws Exception {
+        RequestStats.start();
+        RequestStats.start();
+        assertNull(RequestStats.finish());
+        assertNotNull(RequestStats.finish());
+        assertNull(RequestStats.finish());
+    }
+
+    @Test
+    public void reset_shouldLetAnUnfinishedThreadReportAgain() throws Exception {
+        RequestStats.start();
+        RequestStats.start();  // never finished, as if an Error skipped its reply
+        RequestStats.reset();
+        RequestStats.start();
+        assertNotNull(RequestStats.finish());
+    }
+}
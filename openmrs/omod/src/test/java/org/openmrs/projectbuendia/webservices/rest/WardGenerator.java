@@ -0,0 +1,271 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.openmrs.projectbuendia.webservices.rest;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterType;
+import org.openmrs.Field;
+import org.openmrs.Form;
+import org.openmrs.FormField;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PersonName;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.FormService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.util.FormConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Fills the current database with a generated ward, for tests and benchmarks
+ * that need realistic amounts of data: patients with names, MSF IDs, and
+ * assigned zones, a chart form whose questions are in groups, encounters full
+ * of observations of every value type, and orders.  The patients look like
+ * those of tools/stress-testing/data-generator (whose SQL output is specific
+ * to MySQL), but are created through the OpenMRS services so that this works
+ * on any database.  Everything depends only on the seed and the sizes.
+ */
+public class WardGenerator {
+    /** The generated times all fall in the 30 days before 2015-01-01 UTC. */
+    private static final long END_MILLIS = 1420070400000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final int QUESTIONS_PER_GROUP = 6;
+    private static final int ANSWERS_PER_CODED_QUESTION = 4;
+    private static final String[] GIVEN_NAMES = {
+            "Fatmata", "Mohamed", "Aminata", "Ibrahim", "Mariama", "Abu", "Isatu", "Alusine"};
+    private static final String[] FAMILY_NAMES = {
+            "Kamara", "Sesay", "Koroma", "Bangura", "Conteh", "Turay", "Kanu", "Jalloh"};
+
+    private static final Comparator<ConceptAnswer> ANSWER_ORDER = new Comparator<ConceptAnswer>() {
+        @Override public int compare(ConceptAnswer a, ConceptAnswer b) {
+            return a.getAnswerConcept().getId().compareTo(b.getAnswerConcept().getId());
+        }
+    };
+
+    private final Random random;
+    private final List<Concept> questions;
+    private final Form chart;
+    private int patientCount = 0;
+
+    /**
+     * Creates the base locations, the questions, and the chart form (which
+     * becomes the configured chart), ready for patients to be added.
+     * @param seed the seed for all the random choices of names and values
+     * @param questionCount the number of questions on the chart
+     */
+    public WardGenerator(long seed, int questionCount) {
+        random = new Random(seed);
+        LocationResource.ensureBaseLocationsExist();
+        EncounterService encounterService = Context.getEncounterService();
+        if (encounterService.getEncounterType("ADULTRETURN") == null) {
+            encounterService.saveEncounterType(new EncounterType("ADULTRETURN", "Return visit"));
+        }
+        questions = createQuestions(Math.max(questionCount, QUESTIONS_PER_GROUP));
+        chart = createChart(questions);
+        Context.getAdministrationService().saveGlobalProperty(
+                new GlobalProperty(GlobalProperties.CHART_UUIDS, chart.getUuid()));
+    }
+
+    /** Returns the chart form, which is also listed in the chart global property. */
+    public Form getChart() {
+        return chart;
+    }
+
+    /** Returns the questions (one per chart field) that the observations answer. */
+    public List<Concept> getQuestions() {
+        return questions;
+    }
+
+    /** Returns the number of patients added so far. */
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    /**
+     * Adds patients to the ward, each with the given numbers of encounters
+     * and orders.  The Hibernate session is flushed and cleared after each
+     * patient, so adding a large ward doesn't fill up memory.
+     * @param count the number of patients to add
+     * @param encountersPerPatient the number of encounters for each patient
+     * @param obsPerEncounter the number of observations in each encounter,
+     *     at most the number of questions
+     * @param ordersPerPatient the number of orders for each patient
+     */
+    public void addPatients(
+            int count, int encountersPerPatient, int obsPerEncounter, int ordersPerPatient) {
+        EncounterType encounterType = Context.getEncounterService().getEncounterType("ADULTRETURN");
+        Location root = Context.getLocationService().getLocationByUuid(LocationResource.ROOT_UUID);
+        List<Location> zones = new ArrayList<>(root.getChildLocations());
+        Collections.sort(zones, new Comparator<Location>() {
+            @Override public int compare(Location a, Location b) {
+                return a.getUuid().compareTo(b.getUuid());
+            }
+        });
+        OrderResource orderResource = new OrderResource();
+        for (int i = 0; i < count; i++) {
+            Location zone = zones.get(random.nextInt(zones.size()));
+            Patient patient = createPatient(zone);
+            for (int j = 0; j < encountersPerPatient; j++) {
+                createEncounter(patient, encounterType, root, obsPerEncounter);
+            }
+            for (int j = 0; j < ordersPerPatient; j++) {
+                SimpleObject order = new SimpleObject();
+                order.add("patient_uuid", patient.getUuid());
+                order.add("instructions", "Paracetamol " + (1 + random.nextInt(3)) + " tablets");
+                order.add("start", END_MILLIS - (long) (random.nextDouble() * 30 * MILLIS_PER_DAY));
+                orderResource.createInner(order);
+            }
+            Context.flushSession();
+            Context.clearSession();
+        }
+    }
+
+    /** Creates questions of the value types that charts use, in rotation. */
+    private List<Concept> createQuestions(int count) {
+        ConceptService conceptService = Context.getConceptService();
+        ConceptClass questionClass = conceptService.getConceptClassByName("Question");
+        ConceptClass answerClass = conceptService.getConceptClassByName("Misc");
+        String[] datatypeNames = {"Numeric", "Coded", "Text", "Date"};
+        List<Concept> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ConceptDatatype datatype =
+                    conceptService.getConceptDatatypeByName(datatypeNames[i % datatypeNames.length]);
+            Concept question = datatype.isNumeric() ? new ConceptNumeric() : new Concept();
+            question.setFullySpecifiedName(new ConceptName("Ward question " + i, Locale.ENGLISH));
+            question.setDatatype(datatype);
+            question.setConceptClass(questionClass);
+            if (datatype.isCoded()) {
+                for (int j = 0; j < ANSWERS_PER_CODED_QUESTION; j++) {
+                    question.addAnswer(new ConceptAnswer(createConcept(
+                            "Ward answer " + i + "." + j, "N/A", answerClass)));
+                }
+            }
+            conceptService.saveConcept(question);
+            result.add(question);
+        }
+        return result;
+    }
+
+    private Concept createConcept(String name, String datatypeName, ConceptClass conceptClass) {
+        ConceptService conceptService = Context.getConceptService();
+        Concept concept = new Concept();
+        concept.setFullySpecifiedName(new ConceptName(name, Locale.ENGLISH));
+        concept.setDatatype(conceptService.getConceptDatatypeByName(datatypeName));
+        concept.setConceptClass(conceptClass);
+        return conceptService.saveConcept(concept);
+    }
+
+    /** Creates a chart form with the questions in groups, as our charts have them. */
+    private Form createChart(List<Concept> questions) {
+        FormService formService = Context.getFormService();
+        ConceptClass groupClass = Context.getConceptService().getConceptClassByName("ConvSet");
+        Form form = new Form();
+        form.setName("Ward chart");
+        form.setVersion("1");
+        form.setPublished(true);
+        formService.saveForm(form);
+
+        FormField group = null;
+        for (int i = 0; i < questions.size(); i++) {
+            if (i % QUESTIONS_PER_GROUP == 0) {
+                group = createFormField(form, null, i / QUESTIONS_PER_GROUP,
+                        createConcept("Ward group " + i / QUESTIONS_PER_GROUP, "N/A", groupClass));
+            }
+            createFormField(form, group, i % QUESTIONS_PER_GROUP, questions.get(i));
+        }
+        return form;
+    }
+
+    private FormField createFormField(Form form, FormField parent, int number, Concept concept) {
+        FormService formService = Context.getFormService();
+        Field field = new Field();
+        field.setName(concept.getName(Locale.ENGLISH).getName());
+        field.setConcept(concept);
+        field.setFieldType(formService.getFieldType(FormConstants.FIELD_TYPE_CONCEPT));
+        formService.saveField(field);
+
+        FormField formField = new FormField();
+        formField.setForm(form);
+        formField.setField(field);
+        formField.setParent(parent);
+        formField.setFieldNumber(number + 1);
+        formField.setRequired(false);
+        return formService.saveFormField(formField);
+    }
+
+    private Patient createPatient(Location zone) {
+        Patient patient = new Patient();
+        patient.addName(new PersonName(
+                GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)], null,
+                FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)]));
+        patient.setGender(random.nextBoolean() ? "F" : "M");
+        patient.setBirthdate(new Date(END_MILLIS - (365L + random.nextInt(60 * 365)) * MILLIS_PER_DAY));
+        PatientIdentifier identifier = new PatientIdentifier(
+                "KH." + patientCount, DbUtil.getMsfIdentifierType(), zone);
+        identifier.setPreferred(true);
+        patient.addIdentifier(identifier);
+        Context.getPatientService().savePatient(patient);
+        DbUtil.setPersonAttributeValue(patient, DbUtil.getAssignedLocationAttributeType(),
+                Integer.toString(zone.getId()));
+        patientCount++;
+        return patient;
+    }
+
+    private void createEncounter(
+            Patient patient, EncounterType type, Location location, int obsPerEncounter) {
+        Date datetime = new Date(END_MILLIS - (long) (random.nextDouble() * 30 * MILLIS_PER_DAY));
+        Encounter encounter = new Encounter();
+        encounter.setPatient(patient);
+        encounter.setEncounterType(type);
+        encounter.setLocation(location);
+        encounter.setEncounterDatetime(datetime);
+
+        List<Concept> shuffled = new ArrayList<>(questions);
+        Collections.shuffle(shuffled, random);
+        for (Concept question : shuffled.subList(0, Math.min(obsPerEncounter, shuffled.size()))) {
+            Obs obs = new Obs(patient, question, datetime, location);
+            ConceptDatatype datatype = question.getDatatype();
+            if (datatype.isNumeric()) {
+                obs.setValueNumeric(Math.round(random.nextDouble() * 1000) / 10.0);
+            } else if (datatype.isCoded()) {
+                List<ConceptAnswer> answers = new ArrayList<>(question.getAnswers());
+                Collections.sort(answers, ANSWER_ORDER);  // the set's order varies
+                obs.setValueCoded(answers.get(random.nextInt(answers.size())).getAnswerConcept());
+            } else if (datatype.isText()) {
+                obs.setValueText("Note " + random.nextInt(10000));
+            } else if (datatype.isDate()) {
+                obs.setValueDatetime(new Date(datetime.getTime()
+                        - random.nextInt(14) * MILLIS_PER_DAY));
+            }
+            encounter.addObs(obs);
+        }
+        Context.getEncounterService().saveEncounter(encounter);
+    }
+}
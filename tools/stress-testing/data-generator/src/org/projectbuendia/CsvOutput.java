@@ -0,0 +1,77 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each partition as three CSV files, one each for patients,
+ * encounters, and observations, for loading into analysis tools.  An
+ * encounter is keyed by its patient ID and its index, e.g. "KH.12#3".
+ * The users are not written.
+ */
+public class CsvOutput extends OutputFormat {
+
+    public CsvOutput(Options options) {
+        super(options);
+    }
+
+    @Override
+    public RecordWriter open(int partition) throws IOException {
+        final Writer patients = openFile(partition, ".patients.csv");
+        final Writer encounters = openFile(partition, ".encounters.csv");
+        final Writer observations = openFile(partition, ".observations.csv");
+        patients.write("patient_id,given_name,family_name,gender,age,assigned_location,admitted_days_ago\n");
+        encounters.write("encounter,patient_id,location,days_ago,time,provider\n");
+        observations.write("encounter,concept,value\n");
+
+        return new RecordWriter() {
+            @Override public void write(GeneratedPatient patient) throws IOException {
+                patients.write(quote(patient.patientId) + "," + quote(patient.givenName) + ","
+                        + quote(patient.familyName) + "," + patient.gender + "," + patient.age + ","
+                        + quote(patient.assignedLocation) + "," + patient.admittedDaysAgo + "\n");
+                int index = 0;
+                for (GeneratedPatient.Encounter encounter : patient.encounters) {
+                    String key = quote(patient.patientId + "#" + index++);
+                    encounters.write(key + "," + quote(patient.patientId) + ","
+                            + quote(encounter.location) + "," + encounter.daysAgo + ","
+                            + encounter.getTime() + "," + quote(encounter.provider) + "\n");
+                    for (GeneratedPatient.Observation obs : encounter.observations) {
+                        observations.write(key + "," + quote(obs.concept) + ","
+                                + quote(String.valueOf(obs.value)) + "\n");
+                    }
+                }
+            }
+
+            @Override public void close() throws IOException {
+                try {
+                    patients.close();
+                    encounters.close();
+                } finally {
+                    observations.close();
+                }
+            }
+        };
+    }
+
+    /** Quotes a CSV field if it contains a comma, quote, or line break. */
+    static String quote(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return "\"" + s.replace("\"", "\"\"") + "\"";
+            }
+        }
+        return s;
+    }
+}
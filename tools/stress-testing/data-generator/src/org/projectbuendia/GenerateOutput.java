@@ -1,7 +1,13 @@
 package org.projectbuendia;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Pim de Witte(wwadewitte), Whitespell LLC
@@ -9,72 +15,62 @@ import java.nio.charset.StandardCharsets;
  */
 public class GenerateOutput {
 
-    private static final String MAIN_TEMPLATE_PATH = "templates/main_template.json";
-    private static final String MAIN_TEMPLATE;
+    private static final int PROGRESS_INTERVAL = 10000;
 
-    private static final String PATIENT_TEMPLATE_PATH = "templates/patient_template.json";
-    private static final String PATIENT_TEMPLATE;
+    /* mixes the seed and the patient number into a seed for that patient */
+    private static final long SEED_MULTIPLIER = 0x9E3779B97F4A7C15L;
 
-    private static final String ENCOUNTER_TEMPLATE_PATH = "templates/encounter_template.json";
-    private static final String ENCOUNTER_TEMPLATE;
-
-    /* read all templates */
-    static {
-        String PATIENT_TEMPLATE_TMP, ENCOUNTER_TEMPLATE_TMP, MAIN_TEMPLATE_TMP;
-        try {
-            PATIENT_TEMPLATE_TMP = FileUtils.readFile(PATIENT_TEMPLATE_PATH, StandardCharsets.UTF_8);
-            ENCOUNTER_TEMPLATE_TMP = FileUtils.readFile(ENCOUNTER_TEMPLATE_PATH, StandardCharsets.UTF_8);
-            MAIN_TEMPLATE_TMP = FileUtils.readFile(MAIN_TEMPLATE_PATH, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            System.out.println(e);
-            PATIENT_TEMPLATE_TMP = null;
-            ENCOUNTER_TEMPLATE_TMP = null;
-            MAIN_TEMPLATE_TMP = null;
-        }
-        PATIENT_TEMPLATE = PATIENT_TEMPLATE_TMP;
-        ENCOUNTER_TEMPLATE = ENCOUNTER_TEMPLATE_TMP;
-        MAIN_TEMPLATE = MAIN_TEMPLATE_TMP;
-    }
-
-
-    /* generate a specific patient object and it's inner observations */
-
-    private static String generatePatient(String template, int uid, int encounter_amount) {
-        if(template.contains("@encounter_template@")) {
-               StringBuilder s = new StringBuilder();
-
-                for(int i = 0; i < encounter_amount;i ++){
-                    s.append(ENCOUNTER_TEMPLATE + (i == encounter_amount -1 ? "" : ","));
+    /*
+     * Generate the patients and write them out.  The patients are divided
+     * into one contiguous range per worker, and each worker generates and
+     * writes its range as it goes, so nothing is held in memory.  Each patient
+     * gets its own random number generator, seeded from the seed and the
+     * patient number, so the data doesn't depend on the number of workers.
+     */
+    public static void generateOutput(final Options options) throws Exception {
+        System.out.println("Generating " + options.patients + " patients over "
+                + options.days + " days with " + options.encountersPerDay
+                + " encounters per patient per day, as " + options.format
+                + " in " + options.workers + " partitions");
+        long startMillis = System.currentTimeMillis();
+
+        final OutputFormat format = OutputFormat.forOptions(options);
+        format.prepare();
+
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(options.workers);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < options.workers; i++) {
+            final int partition = i;
+            final int start = (int) ((long) options.patients * i / options.workers);
+            final int end = (int) ((long) options.patients * (i + 1) / options.workers);
+            results.add(executor.submit(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    try (OutputFormat.RecordWriter writer = format.open(partition)) {
+                        for (int number = start; number < end; number++) {
+                            Random random = new Random(options.seed + number * SEED_MULTIPLIER);
+                            writer.write(GeneratedPatient.generate(
+                                    number, options.days, options.encountersPerDay, random));
+                            int count = done.incrementAndGet();
+                            if (count % PROGRESS_INTERVAL == 0) {
+                                System.out.println("Generated " + count + " patients");
+                            }
+                        }
+                    }
+                    return null;
                 }
-                template = template.replace("@encounter_template@", s.toString());
+            }));
         }
-        return template.replace("@patient_id@", String.valueOf(uid));
-    }
-
-    /* generate the overall output *?
-
-     */
-    public static void generateOutput(int patients, int encounters) {
-        System.out.println("Generating " + patients + " patients with " + encounters + " encounters each");
-        StringBuilder patientStringBuilder = new StringBuilder();
-
-        for(int i = 0; i < patients; i++) {
-            patientStringBuilder.append(generatePatient(PATIENT_TEMPLATE, i, encounters) + (i == patients - 1 ? "" : ","));
-            if(i % 100 == 0 || i == patients - 1) {
-                System.out.println("Generating patient " + i);
+        executor.shutdown();
+        try {
+            for (Future<Void> result : results) {
+                result.get();  // rethrows any worker's failure
             }
-
-        }
-        String finalOutput;
-        finalOutput = MAIN_TEMPLATE.replace("@patients@", patientStringBuilder.toString());
-        String fileName = "output/"+patients+"p"+encounters+"e.json";
-        FileUtils.writeToFile(fileName, finalOutput);
-        if(ShellExecution.executeCommand("python json_to_sql.py " + fileName.replace(".json","").replace("output/", "") + "") == 0)  {
-            System.out.println("Successfully generated .sql also");
-        } else {
-            System.out.println("Did not generated .sql");
+        } finally {
+            executor.shutdownNow();
         }
 
+        System.out.println("Generated " + done.get() + " patients in "
+                + (System.currentTimeMillis() - startMillis) + " ms");
     }
-
 }
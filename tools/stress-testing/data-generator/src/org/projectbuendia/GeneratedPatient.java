@@ -0,0 +1,159 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One generated patient with all of their encounters, in the terms of the
+ * site JSON format (ages like "26Y", times as days ago and a time of day).
+ * Patients are generated one at a time and written out straight away, so
+ * the size of the dataset is never limited by memory.
+ */
+public class GeneratedPatient {
+
+    public static class Observation {
+        public final String concept;
+        public final Object value;  // a Double, or the name of a coded answer
+
+        Observation(String concept, Object value) {
+            this.concept = concept;
+            this.value = value;
+        }
+    }
+
+    public static class Encounter {
+        public final String location;
+        public final int daysAgo;
+        public final int minuteOfDay;
+        public final String provider;
+        public final List<Observation> observations = new ArrayList<>();
+
+        Encounter(String location, int daysAgo, int minuteOfDay, String provider) {
+            this.location = location;
+            this.daysAgo = daysAgo;
+            this.minuteOfDay = minuteOfDay;
+            this.provider = provider;
+        }
+
+        /** Returns the time of day as "HH:mm". */
+        public String getTime() {
+            return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+        }
+    }
+
+    public final String patientId;
+    public final String givenName;
+    public final String familyName;
+    public final String gender;
+    public final String age;  // a number followed by "Y" for years or "M" for months
+    public final String assignedLocation;
+    public final int admittedDaysAgo;
+    public final List<Encounter> encounters = new ArrayList<>();
+
+    private GeneratedPatient(String patientId, String givenName, String familyName,
+            String gender, String age, String assignedLocation, int admittedDaysAgo) {
+        this.patientId = patientId;
+        this.givenName = givenName;
+        this.familyName = familyName;
+        this.gender = gender;
+        this.age = age;
+        this.assignedLocation = assignedLocation;
+        this.admittedDaysAgo = admittedDaysAgo;
+    }
+
+    /** Returns the approximate age in months, as used to compute the birthdate. */
+    public int getAgeInMonths() {
+        int n = Integer.parseInt(age.substring(0, age.length() - 1));
+        return age.endsWith("Y") ? n * 12 + 6 : n;
+    }
+
+    /**
+     * Generates a patient.  Patients are admitted on one of the given number
+     * of days before today and seen on each day since, including the day of
+     * admission, a Poisson-distributed number of times (at least once on the
+     * day of admission).  Most encounters happen during the morning and
+     * afternoon ward rounds.  Each encounter answers each question with that
+     * question's probability.
+     * @param number the patient's number, which becomes the MSF ID "KH.[number]"
+     * @param days the number of days over which admissions are spread
+     * @param encountersPerDay the mean number of encounters per patient per day
+     */
+    public static GeneratedPatient generate(
+            int number, int days, double encountersPerDay, Random random) {
+        boolean female = random.nextBoolean();
+        String[] givenNames = female ? WardModel.FEMALE_NAMES : WardModel.MALE_NAMES;
+        String age;
+        if (random.nextDouble() < 0.08) {
+            age = random.nextInt(24) + "M";
+        } else {
+            age = Math.min(75, 2 + (int) Math.abs(random.nextGaussian() * 22)) + "Y";
+        }
+        GeneratedPatient patient = new GeneratedPatient(
+                "KH." + number,
+                givenNames[random.nextInt(givenNames.length)],
+                WardModel.FAMILY_NAMES[random.nextInt(WardModel.FAMILY_NAMES.length)],
+                female ? "F" : "M",
+                age,
+                WardModel.ASSIGNED_LOCATIONS.pick(random),
+                // Nobody is admitted today, so no encounter is in the future.
+                1 + random.nextInt(days));
+
+        for (int daysAgo = patient.admittedDaysAgo; daysAgo >= 1; daysAgo--) {
+            int count = poisson(encountersPerDay, random);
+            if (daysAgo == patient.admittedDaysAgo) {
+                count = Math.max(1, count);
+            }
+            for (int i = 0; i < count; i++) {
+                boolean admission = patient.encounters.isEmpty();
+                Encounter encounter = new Encounter(
+                        admission ? WardModel.ADMISSION_LOCATION : patient.assignedLocation,
+                        daysAgo, pickMinuteOfDay(random),
+                        WardModel.USERS[random.nextInt(WardModel.USERS.length)].getProviderName());
+                for (WardModel.Question question : WardModel.QUESTIONS) {
+                    if ((!question.femaleOnly || female)
+                            && random.nextDouble() < question.probability) {
+                        encounter.observations.add(
+                                new Observation(question.concept, question.pickValue(random)));
+                    }
+                }
+                patient.encounters.add(encounter);
+            }
+        }
+        return patient;
+    }
+
+    /** Picks a time of day, mostly during the morning and afternoon rounds. */
+    private static int pickMinuteOfDay(Random random) {
+        double r = random.nextDouble();
+        if (r < 0.45) {
+            return 8 * 60 + random.nextInt(120);
+        } else if (r < 0.85) {
+            return 15 * 60 + random.nextInt(120);
+        }
+        return random.nextInt(24 * 60);
+    }
+
+    /** Draws from a Poisson distribution with the given mean (Knuth's method). */
+    private static int poisson(double mean, Random random) {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,411 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Loads the patients straight into an OpenMRS database over JDBC, skipping
+ * the SQL file.  Each partition gets its own connection and inserts its
+ * patients with batched prepared statements, committing every batchSize
+ * patients.  The MySQL driver must be on the classpath.
+ */
+public class JdbcOutput extends OutputFormat {
+    /** The encounter type and encounter role that json_to_sql.py uses. */
+    private static final int ENCOUNTER_TYPE_ID = 2;
+    private static final int ENCOUNTER_ROLE_ID = 3;
+    private static final String ROOT_LOCATION_UUID = "3449f5fe-8e6b-4250-bcaa-fca5df28ddbf";
+
+    // Looked up once by prepare(), then only read by the partitions.
+    private int creatorId;
+    private int assignedLocationTypeId;
+    private int msfTypeId;
+    private int rootLocationId;
+    private final Map<String, Integer> conceptIds = new HashMap<>();
+    private final Map<String, Integer> locationIds = new HashMap<>();
+    private final Map<String, Integer> providerIds = new HashMap<>();
+    private Timestamp today;
+
+    public JdbcOutput(Options options) {
+        super(options);
+        if (options.jdbcUrl == null) {
+            throw new IllegalArgumentException("--format jdbc needs --jdbc");
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(options.jdbcUrl, options.user, options.password);
+    }
+
+    @Override
+    public void prepare() throws IOException {
+        Calendar midnight = Calendar.getInstance();
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        today = new Timestamp(midnight.getTimeInMillis());
+
+        try (Connection db = connect()) {
+            Integer android = queryId(db, "SELECT user_id FROM users WHERE username=?", "android");
+            creatorId = android != null ? android
+                    : requireId(db, "SELECT user_id FROM users WHERE username=?", "admin");
+            assignedLocationTypeId = requireId(db, "SELECT person_attribute_type_id"
+                    + " FROM person_attribute_type WHERE name=?", "assigned_location");
+            msfTypeId = requireId(db, "SELECT patient_identifier_type_id"
+                    + " FROM patient_identifier_type WHERE name=?", "MSF");
+            rootLocationId = requireId(db, "SELECT location_id FROM location WHERE uuid=?",
+                    ROOT_LOCATION_UUID);
+
+            String conceptQuery = "SELECT concept.concept_id FROM concept_name"
+                    + " JOIN concept ON concept.concept_id=concept_name.concept_id"
+                    + " WHERE name=? AND concept_name.voided=0 AND concept.retired=0"
+                    + " ORDER BY concept_name.locale='en_GB_client' DESC, concept_name.locale='en' DESC";
+            for (WardModel.Question question : WardModel.QUESTIONS) {
+                conceptIds.put(question.concept, requireId(db, conceptQuery, question.concept));
+                for (String answer : question.getAnswers()) {
+                    conceptIds.put(answer, requireId(db, conceptQuery, answer));
+                }
+            }
+            String locationQuery = "SELECT location_id FROM location WHERE name=? AND retired=0";
+            locationIds.put(WardModel.ADMISSION_LOCATION,
+                    requireId(db, locationQuery, WardModel.ADMISSION_LOCATION));
+            for (String location : WardModel.ASSIGNED_LOCATIONS.getChoices()) {
+                locationIds.put(location, requireId(db, locationQuery, location));
+            }
+
+            createMissingUsers(db);
+            for (WardModel.User user : WardModel.USERS) {
+                providerIds.put(user.getProviderName(), requireId(db,
+                        "SELECT provider_id FROM provider WHERE name=? AND retired=0",
+                        user.getProviderName()));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not prepare " + options.jdbcUrl, e);
+        }
+    }
+
+    private void createMissingUsers(Connection db) throws SQLException {
+        db.setAutoCommit(false);
+        int systemId = UserAccounts.FIRST_SYSTEM_ID;
+        for (WardModel.User user : WardModel.USERS) {
+            String id = UserAccounts.getSystemId(systemId++);
+            if (queryId(db, "SELECT user_id FROM users WHERE username=?", user.username) != null) {
+                continue;
+            }
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            int personId = insertPerson(db, "M", null, now);
+            try (PreparedStatement name = db.prepareStatement(PERSON_NAME_SQL);
+                 PreparedStatement users = db.prepareStatement("INSERT INTO users"
+                         + " (system_id,username,password,salt,creator,date_created,person_id,uuid)"
+                         + " VALUES (?,?,?,?,?,?,?,?)");
+                 PreparedStatement provider = db.prepareStatement("INSERT INTO provider"
+                         + " (person_id,name,creator,date_created,uuid) VALUES (?,?,?,?,?)")) {
+                setPersonName(name, personId, user.givenName, user.familyName, now);
+                name.executeUpdate();
+                String[] passwordAndSalt = UserAccounts.hashPasswordWithNewSalt(UserAccounts.PASSWORD);
+                users.setString(1, id);
+                users.setString(2, user.username);
+                users.setString(3, passwordAndSalt[0]);
+                users.setString(4, passwordAndSalt[1]);
+                users.setInt(5, creatorId);
+                users.setTimestamp(6, now);
+                users.setInt(7, personId);
+                users.setString(8, uuid());
+                users.executeUpdate();
+                provider.setInt(1, personId);
+                provider.setString(2, user.getProviderName());
+                provider.setInt(3, creatorId);
+                provider.setTimestamp(4, now);
+                provider.setString(5, uuid());
+                provider.executeUpdate();
+            }
+        }
+        db.commit();
+    }
+
+    @Override
+    public RecordWriter open(int partition) throws IOException {
+        try {
+            return new PartitionWriter(connect());
+        } catch (SQLException e) {
+            throw new IOException("Could not connect to " + options.jdbcUrl, e);
+        }
+    }
+
+    private static final String PERSON_SQL = "INSERT INTO person"
+            + " (gender,birthdate,creator,date_created,uuid) VALUES (?,?,?,?,?)";
+    private static final String PERSON_NAME_SQL = "INSERT INTO person_name"
+            + " (person_id,given_name,family_name,creator,date_created,uuid) VALUES (?,?,?,?,?,?)";
+
+    /** Inserts the patients of one partition, a batch at a time. */
+    private class PartitionWriter implements RecordWriter {
+        private final Connection db;
+        private final List<GeneratedPatient> batch = new ArrayList<>();
+
+        PartitionWriter(Connection db) throws SQLException {
+            this.db = db;
+            db.setAutoCommit(false);
+        }
+
+        @Override public void write(GeneratedPatient patient) throws IOException {
+            batch.add(patient);
+            if (batch.size() >= options.batchSize) {
+                flush();
+            }
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                try {
+                    db.close();
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                insertBatch();
+                db.commit();
+            } catch (SQLException e) {
+                throw new IOException("Could not insert patients " + batch.get(0).patientId
+                        + " to " + batch.get(batch.size() - 1).patientId, e);
+            }
+            batch.clear();
+        }
+
+        /**
+         * Inserts the persons and encounters first, to get their generated
+         * IDs, then everything that refers to them.
+         */
+        private void insertBatch() throws SQLException {
+            int[] personIds = new int[batch.size()];
+            try (PreparedStatement person = db.prepareStatement(
+                    PERSON_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (GeneratedPatient patient : batch) {
+                    person.setString(1, patient.gender);
+                    person.setDate(2, new java.sql.Date(
+                            addMonths(today, -patient.getAgeInMonths()).getTime()));
+                    person.setInt(3, creatorId);
+                    person.setTimestamp(4, addDays(today, -patient.admittedDaysAgo));
+                    person.setString(5, uuid());
+                    person.addBatch();
+                }
+                person.executeBatch();
+                readGeneratedKeys(person, personIds);
+            }
+
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            List<Integer> encounterPersonIds = new ArrayList<>();
+            List<GeneratedPatient.Encounter> encounters = new ArrayList<>();
+            try (PreparedStatement name = db.prepareStatement(PERSON_NAME_SQL);
+                 PreparedStatement patientRow = db.prepareStatement("INSERT INTO patient"
+                         + " (patient_id,creator,date_created) VALUES (?,?,?)");
+                 PreparedStatement identifier = db.prepareStatement("INSERT INTO patient_identifier"
+                         + " (patient_id,identifier,identifier_type,location_id,creator,date_created,uuid)"
+                         + " VALUES (?,?,?,?,?,?,?)");
+                 PreparedStatement attribute = db.prepareStatement("INSERT INTO person_attribute"
+                         + " (person_id,value,person_attribute_type_id,creator,date_created,uuid)"
+                         + " VALUES (?,?,?,?,?,?)")) {
+                for (int i = 0; i < batch.size(); i++) {
+                    GeneratedPatient patient = batch.get(i);
+                    Timestamp admitted = addDays(today, -patient.admittedDaysAgo);
+                    setPersonName(name, personIds[i], patient.givenName, patient.familyName, admitted);
+                    name.addBatch();
+                    patientRow.setInt(1, personIds[i]);
+                    patientRow.setInt(2, creatorId);
+                    patientRow.setTimestamp(3, admitted);
+                    patientRow.addBatch();
+                    identifier.setInt(1, personIds[i]);
+                    identifier.setString(2, patient.patientId);
+                    identifier.setInt(3, msfTypeId);
+                    identifier.setInt(4, rootLocationId);
+                    identifier.setInt(5, creatorId);
+                    identifier.setTimestamp(6, now);
+                    identifier.setString(7, uuid());
+                    identifier.addBatch();
+                    attribute.setInt(1, personIds[i]);
+                    attribute.setString(2, "" + locationIds.get(patient.assignedLocation));
+                    attribute.setInt(3, assignedLocationTypeId);
+                    attribute.setInt(4, creatorId);
+                    attribute.setTimestamp(5, now);
+                    attribute.setString(6, uuid());
+                    attribute.addBatch();
+                    for (GeneratedPatient.Encounter encounter : patient.encounters) {
+                        encounterPersonIds.add(personIds[i]);
+                        encounters.add(encounter);
+                    }
+                }
+                name.executeBatch();
+                patientRow.executeBatch();
+                identifier.executeBatch();
+                attribute.executeBatch();
+            }
+
+            int[] encounterIds = new int[encounters.size()];
+            try (PreparedStatement encounter = db.prepareStatement("INSERT INTO encounter"
+                    + " (encounter_type,patient_id,location_id,encounter_datetime,creator,date_created,uuid)"
+                    + " VALUES (?,?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < encounters.size(); i++) {
+                    GeneratedPatient.Encounter e = encounters.get(i);
+                    encounter.setInt(1, ENCOUNTER_TYPE_ID);
+                    encounter.setInt(2, encounterPersonIds.get(i));
+                    encounter.setInt(3, locationIds.get(e.location));
+                    encounter.setTimestamp(4, getEncounterTime(e));
+                    encounter.setInt(5, creatorId);
+                    encounter.setTimestamp(6, now);
+                    encounter.setString(7, uuid());
+                    encounter.addBatch();
+                }
+                encounter.executeBatch();
+                readGeneratedKeys(encounter, encounterIds);
+            }
+
+            try (PreparedStatement provider = db.prepareStatement("INSERT INTO encounter_provider"
+                    + " (encounter_id,provider_id,encounter_role_id,creator,date_created,uuid)"
+                    + " VALUES (?,?,?,?,?,?)");
+                 PreparedStatement obs = db.prepareStatement("INSERT INTO obs"
+                         + " (person_id,concept_id,encounter_id,obs_datetime,value_numeric,value_coded,"
+                         + "creator,date_created,uuid) VALUES (?,?,?,?,?,?,?,?,?)")) {
+                for (int i = 0; i < encounters.size(); i++) {
+                    GeneratedPatient.Encounter e = encounters.get(i);
+                    Timestamp time = getEncounterTime(e);
+                    provider.setInt(1, encounterIds[i]);
+                    provider.setInt(2, providerIds.get(e.provider));
+                    provider.setInt(3, ENCOUNTER_ROLE_ID);
+                    provider.setInt(4, creatorId);
+                    provider.setTimestamp(5, now);
+                    provider.setString(6, uuid());
+                    provider.addBatch();
+                    for (GeneratedPatient.Observation o : e.observations) {
+                        obs.setInt(1, encounterPersonIds.get(i));
+                        obs.setInt(2, conceptIds.get(o.concept));
+                        obs.setInt(3, encounterIds[i]);
+                        obs.setTimestamp(4, time);
+                        if (o.value instanceof Double) {
+                            obs.setDouble(5, (Double) o.value);
+                            obs.setNull(6, Types.INTEGER);
+                        } else {
+                            obs.setNull(5, Types.DOUBLE);
+                            obs.setInt(6, conceptIds.get(o.value));
+                        }
+                        obs.setInt(7, creatorId);
+                        obs.setTimestamp(8, now);
+                        obs.setString(9, uuid());
+                        obs.addBatch();
+                    }
+                }
+                provider.executeBatch();
+                obs.executeBatch();
+            }
+        }
+
+        private Timestamp getEncounterTime(GeneratedPatient.Encounter encounter) {
+            return new Timestamp(addDays(today, -encounter.daysAgo).getTime()
+                    + encounter.minuteOfDay * 60 * 1000L);
+        }
+    }
+
+    private int insertPerson(Connection db, String gender, java.sql.Date birthdate, Timestamp created)
+            throws SQLException {
+        try (PreparedStatement person = db.prepareStatement(
+                PERSON_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            person.setString(1, gender);
+            person.setDate(2, birthdate);
+            person.setInt(3, creatorId);
+            person.setTimestamp(4, created);
+            person.setString(5, uuid());
+            person.executeUpdate();
+            int[] ids = new int[1];
+            readGeneratedKeys(person, ids);
+            return ids[0];
+        }
+    }
+
+    private void setPersonName(PreparedStatement name, int personId, String givenName,
+                               String familyName, Timestamp created) throws SQLException {
+        name.setInt(1, personId);
+        name.setString(2, givenName);
+        name.setString(3, familyName);
+        name.setInt(4, creatorId);
+        name.setTimestamp(5, created);
+        name.setString(6, uuid());
+    }
+
+    private static void readGeneratedKeys(Statement statement, int[] ids) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            for (int i = 0; i < ids.length; i++) {
+                if (!keys.next()) {
+                    throw new SQLException("Expected " + ids.length + " generated keys, got " + i);
+                }
+                ids[i] = keys.getInt(1);
+            }
+        }
+    }
+
+    private static Integer queryId(Connection db, String sql, String param) throws SQLException {
+        try (PreparedStatement query = db.prepareStatement(sql)) {
+            query.setString(1, param);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? result.getInt(1) : null;
+            }
+        }
+    }
+
+    /** Looks up an ID, failing before any patients are written if it's missing. */
+    private static int requireId(Connection db, String sql, String param) throws SQLException {
+        Integer id = queryId(db, sql, param);
+        if (id == null) {
+            throw new SQLException("Not found in the database: " + param);
+        }
+        return id;
+    }
+
+    private static Timestamp addDays(Timestamp time, int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(time);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return new Timestamp(calendar.getTimeInMillis());
+    }
+
+    private static Timestamp addMonths(Timestamp time, int months) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(time);
+        calendar.add(Calendar.MONTH, months);
+        return new Timestamp(calendar.getTimeInMillis());
+    }
+
+    private static String uuid() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,101 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each partition as a site JSON file, the format that json_to_sql.py
+ * reads: {"users": [...], "patients": [...]}.  Only partition 0 lists the
+ * users.
+ */
+public class JsonOutput extends OutputFormat {
+
+    public JsonOutput(Options options) {
+        super(options);
+    }
+
+    @Override
+    public RecordWriter open(int partition) throws IOException {
+        final Writer out = openFile(partition, ".json");
+        out.write("{\n\"users\": [");
+        if (partition == 0) {
+            String separator = "\n";
+            for (WardModel.User user : WardModel.USERS) {
+                out.write(separator);
+                out.write("{\"username\": " + quote(user.username)
+                        + ", \"given_name\": " + quote(user.givenName)
+                        + ", \"family_name\": " + quote(user.familyName) + "}");
+                separator = ",\n";
+            }
+        }
+        out.write("\n],\n\"patients\": [");
+        return new RecordWriter() {
+            String separator = "\n";
+
+            @Override public void write(GeneratedPatient patient) throws IOException {
+                out.write(separator);
+                separator = ",\n";
+                out.write("{\"patient_id\": " + quote(patient.patientId)
+                        + ", \"given_name\": " + quote(patient.givenName)
+                        + ", \"family_name\": " + quote(patient.familyName)
+                        + ", \"assigned_location\": " + quote(patient.assignedLocation)
+                        + ", \"age\": " + quote(patient.age)
+                        + ", \"gender\": " + quote(patient.gender)
+                        + ", \"admitted_days_ago\": " + patient.admittedDaysAgo
+                        + ", \"encounters\": [");
+                String encounterSeparator = "\n ";
+                for (GeneratedPatient.Encounter encounter : patient.encounters) {
+                    out.write(encounterSeparator);
+                    encounterSeparator = ",\n ";
+                    out.write("{\"location\": " + quote(encounter.location)
+                            + ", \"days_ago\": " + encounter.daysAgo
+                            + ", \"time\": " + quote(encounter.getTime())
+                            + ", \"provider\": " + quote(encounter.provider)
+                            + ", \"observations\": [");
+                    String obsSeparator = "";
+                    for (GeneratedPatient.Observation obs : encounter.observations) {
+                        out.write(obsSeparator);
+                        obsSeparator = ", ";
+                        out.write("{\"concept\": " + quote(obs.concept) + ", \"value\": "
+                                + (obs.value instanceof Double ? obs.value : quote((String) obs.value))
+                                + "}");
+                    }
+                    out.write("]}");
+                }
+                out.write("]}");
+            }
+
+            @Override public void close() throws IOException {
+                out.write("\n]\n}\n");
+                out.close();
+            }
+        };
+    }
+
+    /** Returns a string as a JSON string literal. */
+    static String quote(String s) {
+        StringBuilder result = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
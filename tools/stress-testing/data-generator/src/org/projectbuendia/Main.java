@@ -1,8 +1,26 @@
-package org.projectbuendia;
-
-public class Main {
-
-    public static void main(String[] args) {
-	TakeInput.takeInput();
-    }
-}
+package org.projectbuendia;
+
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            TakeInput.takeInput();
+            return;
+        }
+        if (args[0].equals("--help")) {
+            System.out.print(Options.USAGE);
+            return;
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.print(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        GenerateOutput.generateOutput(options);
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+/** The settings for one run of the generator, usually from the command line. */
+public class Options {
+    public static final String USAGE =
+            "Usage: java -jar data-generator.jar [options]\n"
+            + "\n"
+            + "With no options, asks for the number of patients and encounters.\n"
+            + "\n"
+            + "  --patients N            number of patients (default 1000)\n"
+            + "  --days N                admissions are spread over the last N days (default 14)\n"
+            + "  --encounters-per-day X  mean encounters per patient per day (default 2)\n"
+            + "  --format F              json, sql, csv, or jdbc (default sql)\n"
+            + "  --workers N             number of partitions generated in parallel\n"
+            + "                          (default: the number of processors)\n"
+            + "  --seed N                random seed; the same seed gives the same data (default 1)\n"
+            + "  --output DIR            directory for json, sql, and csv files (default output)\n"
+            + "  --jdbc URL              database to load directly, for --format jdbc, e.g.\n"
+            + "                          jdbc:mysql://localhost/openmrs?rewriteBatchedStatements=true\n"
+            + "  --user NAME             database user, for --format jdbc\n"
+            + "  --password PASSWORD     database password, for --format jdbc\n"
+            + "  --batch N               patients per batch and transaction (default 500)\n";
+
+    public int patients = 1000;
+    public int days = 14;
+    public double encountersPerDay = 2;
+    public String format = "sql";
+    public int workers = Runtime.getRuntime().availableProcessors();
+    public long seed = 1;
+    public String outputDir = "output";
+    public String jdbcUrl;
+    public String user;
+    public String password;
+    public int batchSize = 500;
+
+    /**
+     * Parses command-line arguments.
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    public static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--patients":
+                    options.patients = Integer.parseInt(value);
+                    break;
+                case "--days":
+                    options.days = Integer.parseInt(value);
+                    break;
+                case "--encounters-per-day":
+                    options.encountersPerDay = Double.parseDouble(value);
+                    break;
+                case "--format":
+                    options.format = value;
+                    break;
+                case "--workers":
+                    options.workers = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                case "--output":
+                    options.outputDir = value;
+                    break;
+                case "--jdbc":
+                    options.jdbcUrl = value;
+                    break;
+                case "--user":
+                    options.user = value;
+                    break;
+                case "--password":
+                    options.password = value;
+                    break;
+                case "--batch":
+                    options.batchSize = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        if (options.patients < 0 || options.days < 1 || options.workers < 1
+                || options.batchSize < 1 || options.encountersPerDay < 0) {
+            throw new IllegalArgumentException("Counts must be positive");
+        }
+        if (options.format.equals("jdbc") && options.jdbcUrl == null) {
+            throw new IllegalArgumentException("--format jdbc needs --jdbc");
+        }
+        return options;
+    }
+
+    /** Returns the base name for output files, e.g. "1000p14d2.0e". */
+    public String getBaseName() {
+        return patients + "p" + days + "d" + encountersPerDay + "e";
+    }
+}
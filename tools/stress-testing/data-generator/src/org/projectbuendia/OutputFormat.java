@@ -0,0 +1,75 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A destination for generated patients.  The patients are split into
+ * partitions that are generated in parallel, and each partition gets its own
+ * {@link RecordWriter} (its own file, or its own database connection), so the
+ * workers never wait for each other.
+ */
+public abstract class OutputFormat {
+
+    /** Writes the patients of one partition, as they are generated. */
+    public interface RecordWriter extends Closeable {
+        void write(GeneratedPatient patient) throws IOException;
+    }
+
+    protected final Options options;
+
+    protected OutputFormat(Options options) {
+        this.options = options;
+    }
+
+    public static OutputFormat forOptions(Options options) {
+        switch (options.format) {
+            case "json":
+                return new JsonOutput(options);
+            case "sql":
+                return new SqlOutput(options);
+            case "csv":
+                return new CsvOutput(options);
+            case "jdbc":
+                return new JdbcOutput(options);
+            default:
+                throw new IllegalArgumentException("Unknown format: " + options.format);
+        }
+    }
+
+    /** Does any work needed once, before the partitions are written. */
+    public void prepare() throws IOException {
+    }
+
+    /**
+     * Opens the writer for a partition.  The users are written with
+     * partition 0, so that partition must be loaded first.
+     */
+    public abstract RecordWriter open(int partition) throws IOException;
+
+    /** Opens a buffered UTF-8 file in the output directory. */
+    protected Writer openFile(int partition, String suffix) throws IOException {
+        File dir = new File(options.outputDir);
+        dir.mkdirs();
+        File file = new File(dir, options.getBaseName() + ".part" + partition + suffix);
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+}
@@ -0,0 +1,191 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes each partition as a MySQL script that inserts the patients into an
+ * OpenMRS database, like json_to_sql.py does with site JSON.  Each script
+ * looks up the IDs of the concepts, locations, and providers once at the
+ * top, writes each encounter's observations in one multi-row INSERT, and
+ * commits in batches, so large scripts load quickly.  Each script can be
+ * loaded in its own mysql session, in parallel, after partition 0 (which
+ * creates the users).
+ */
+public class SqlOutput extends OutputFormat {
+    /** The encounter type and encounter role that json_to_sql.py uses. */
+    private static final int ENCOUNTER_TYPE_ID = 2;
+    private static final int ENCOUNTER_ROLE_ID = 3;
+
+    private final Map<String, String> conceptVariables = new LinkedHashMap<>();
+    private final Map<String, String> locationVariables = new LinkedHashMap<>();
+    private final Map<String, String> providerVariables = new LinkedHashMap<>();
+
+    public SqlOutput(Options options) {
+        super(options);
+        for (WardModel.Question question : WardModel.QUESTIONS) {
+            addVariable(conceptVariables, question.concept, "@c");
+            for (String answer : question.getAnswers()) {
+                addVariable(conceptVariables, answer, "@c");
+            }
+        }
+        addVariable(locationVariables, WardModel.ADMISSION_LOCATION, "@l");
+        for (String location : WardModel.ASSIGNED_LOCATIONS.getChoices()) {
+            addVariable(locationVariables, location, "@l");
+        }
+        for (WardModel.User user : WardModel.USERS) {
+            addVariable(providerVariables, user.getProviderName(), "@p");
+        }
+    }
+
+    private static void addVariable(Map<String, String> variables, String name, String prefix) {
+        if (!variables.containsKey(name)) {
+            variables.put(name, prefix + variables.size());
+        }
+    }
+
+    @Override
+    public RecordWriter open(int partition) throws IOException {
+        final Writer out = openFile(partition, ".sql");
+        out.write("--\n-- Working data\n--\n");
+        out.write("SELECT @android := user_id FROM users WHERE username='android' LIMIT 1;\n");
+        out.write("SELECT @assigned_location_id := person_attribute_type_id FROM person_attribute_type"
+                + " WHERE name='assigned_location' LIMIT 1;\n");
+        out.write("SELECT @msf_type := patient_identifier_type_id FROM patient_identifier_type"
+                + " WHERE name='MSF' LIMIT 1;\n");
+        out.write("SELECT @root_location := location_id FROM location"
+                + " WHERE uuid='3449f5fe-8e6b-4250-bcaa-fca5df28ddbf' LIMIT 1;\n");
+        // Prefer the client's names for concepts, as json_to_sql.py does.
+        out.write("CREATE TEMPORARY TABLE locale_order (id INT PRIMARY KEY,locale VARCHAR(30));\n");
+        out.write("INSERT INTO locale_order (id, locale) VALUES (1, 'en_GB_client'), (2, 'en');\n");
+        for (Map.Entry<String, String> entry : conceptVariables.entrySet()) {
+            out.write("SELECT " + entry.getValue() + " := concept.concept_id FROM concept_name"
+                    + " JOIN concept ON concept.concept_id=concept_name.concept_id"
+                    + " INNER JOIN locale_order ON concept_name.locale=locale_order.locale"
+                    + " WHERE name=" + quote(entry.getKey())
+                    + " AND voided=0 AND concept.retired=0"
+                    + " ORDER BY locale_order.id ASC LIMIT 1;\n");
+        }
+        for (Map.Entry<String, String> entry : locationVariables.entrySet()) {
+            out.write("SELECT " + entry.getValue() + " := location_id FROM location WHERE name="
+                    + quote(entry.getKey()) + " LIMIT 1;\n");
+        }
+        if (partition == 0) {
+            writeUsers(out);
+        }
+        for (Map.Entry<String, String> entry : providerVariables.entrySet()) {
+            out.write("SELECT " + entry.getValue() + " := provider_id FROM provider WHERE name="
+                    + quote(entry.getKey()) + " LIMIT 1;\n");
+        }
+        out.write("--\n-- Patients\n--\nSTART TRANSACTION;\n");
+
+        return new RecordWriter() {
+            int count = 0;
+
+            @Override public void write(GeneratedPatient patient) throws IOException {
+                writePatient(out, patient);
+                if (++count % options.batchSize == 0) {
+                    out.write("COMMIT;\nSTART TRANSACTION;\n");
+                }
+            }
+
+            @Override public void close() throws IOException {
+                out.write("COMMIT;\n");
+                out.close();
+            }
+        };
+    }
+
+    private void writeUsers(Writer out) throws IOException {
+        out.write("--\n-- Users\n--\n");
+        int systemId = UserAccounts.FIRST_SYSTEM_ID;
+        for (WardModel.User user : WardModel.USERS) {
+            String[] passwordAndSalt = UserAccounts.hashPasswordWithNewSalt(UserAccounts.PASSWORD);
+            out.write("-- " + user.givenName + " " + user.familyName + "\n");
+            out.write("INSERT INTO person (gender,creator,date_created,uuid)"
+                    + " VALUES ('M',@android,NOW(),UUID());\n");
+            out.write("SET @person_id = LAST_INSERT_ID();\n");
+            out.write("INSERT INTO person_name (person_id,given_name,family_name,creator,date_created,uuid)"
+                    + " VALUES (@person_id," + quote(user.givenName) + "," + quote(user.familyName)
+                    + ",@android,NOW(),UUID());\n");
+            out.write("INSERT INTO users (system_id,username,password,salt,creator,date_created,person_id,uuid)"
+                    + " VALUES (" + quote(UserAccounts.getSystemId(systemId++)) + ","
+                    + quote(user.username) + "," + quote(passwordAndSalt[0]) + ","
+                    + quote(passwordAndSalt[1]) + ",@android,NOW(),@person_id,UUID());\n");
+            out.write("INSERT INTO provider (person_id,name,creator,date_created,uuid)"
+                    + " VALUES (@person_id," + quote(user.getProviderName())
+                    + ",@android,NOW(),UUID());\n");
+        }
+    }
+
+    private void writePatient(Writer out, GeneratedPatient patient) throws IOException {
+        String admitted = "DATE_SUB(CURDATE(), INTERVAL " + patient.admittedDaysAgo + " DAY)";
+        out.write("-- " + patient.patientId + "\n");
+        out.write("INSERT INTO person (gender,birthdate,creator,date_created,uuid) VALUES ("
+                + quote(patient.gender) + ",DATE_SUB(CURDATE(), INTERVAL "
+                + patient.getAgeInMonths() + " MONTH),@android," + admitted + ",UUID());\n");
+        out.write("SET @person_id = LAST_INSERT_ID();\n");
+        out.write("INSERT INTO person_name (person_id,given_name,family_name,creator,date_created,uuid)"
+                + " VALUES (@person_id," + quote(patient.givenName) + "," + quote(patient.familyName)
+                + ",@android," + admitted + ",UUID());\n");
+        out.write("INSERT INTO patient (patient_id,creator,date_created)"
+                + " VALUES (@person_id,@android," + admitted + ");\n");
+        out.write("INSERT INTO patient_identifier"
+                + " (patient_id,identifier,identifier_type,location_id,creator,date_created,uuid)"
+                + " VALUES (@person_id," + quote(patient.patientId)
+                + ",@msf_type,@root_location,@android,NOW(),UUID());\n");
+        out.write("INSERT INTO person_attribute"
+                + " (person_id,value,person_attribute_type_id,creator,date_created,uuid)"
+                + " VALUES (@person_id," + locationVariables.get(patient.assignedLocation)
+                + ",@assigned_location_id,@android,NOW(),UUID());\n");
+
+        for (GeneratedPatient.Encounter encounter : patient.encounters) {
+            out.write("SET @encounter_datetime = ADDTIME(CAST(DATE_SUB(CURDATE(), INTERVAL "
+                    + encounter.daysAgo + " DAY) AS DATETIME), '" + encounter.getTime() + "');\n");
+            out.write("INSERT INTO encounter"
+                    + " (encounter_type,patient_id,location_id,encounter_datetime,creator,date_created,uuid)"
+                    + " VALUES (" + ENCOUNTER_TYPE_ID + ",@person_id,"
+                    + locationVariables.get(encounter.location)
+                    + ",@encounter_datetime,@android,NOW(),UUID());\n");
+            out.write("SET @encounter_id = LAST_INSERT_ID();\n");
+            out.write("INSERT INTO encounter_provider"
+                    + " (encounter_id,provider_id,encounter_role_id,creator,date_created,uuid)"
+                    + " VALUES (@encounter_id," + providerVariables.get(encounter.provider) + ","
+                    + ENCOUNTER_ROLE_ID + ",@android,NOW(),UUID());\n");
+            if (encounter.observations.isEmpty()) {
+                continue;
+            }
+            out.write("INSERT INTO obs (person_id,concept_id,encounter_id,obs_datetime,"
+                    + "value_numeric,value_coded,creator,date_created,uuid) VALUES\n");
+            String separator = "";
+            for (GeneratedPatient.Observation obs : encounter.observations) {
+                boolean numeric = obs.value instanceof Double;
+                out.write(separator + "(@person_id," + conceptVariables.get(obs.concept)
+                        + ",@encounter_id,@encounter_datetime,"
+                        + (numeric ? obs.value : "NULL") + ","
+                        + (numeric ? "NULL" : conceptVariables.get(obs.value))
+                        + ",@android,NOW(),UUID())");
+                separator = ",\n";
+            }
+            out.write(";\n");
+        }
+    }
+
+    /** Returns a string as a MySQL string literal. */
+    static String quote(String s) {
+        return "'" + s.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -9,7 +9,7 @@ import java.util.Scanner;
  */
 public class TakeInput {
 
-    public static void takeInput() {
+    public static void takeInput() throws Exception {
         {
             String patients, encounters;
 
@@ -19,11 +19,16 @@ public class TakeInput {
             System.out.println("How many patients do you want to generate?");
             patients = input.nextLine();
 
-            System.out.println("How many encounters per patient?");
+            System.out.println("How many encounters per patient per day, on average?");
             encounters = input.nextLine();
 
-            GenerateOutput.generateOutput(Integer.parseInt(patients), Integer.parseInt(encounters));
-
+            Options options = new Options();
+            options.patients = Integer.parseInt(patients);
+            options.encountersPerDay = Double.parseDouble(encounters);
+            options.format = "json";
+            GenerateOutput.generateOutput(options);
+            options.format = "sql";
+            GenerateOutput.generateOutput(options);
         }
     }
 }
@@ -0,0 +1,66 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/** The values that OpenMRS needs in the users table, as json_to_sql.py makes them. */
+public class UserAccounts {
+    /** The password of every generated user. */
+    public static final String PASSWORD = "Password123";
+
+    /**
+     * Generated users get system IDs counting up from here, on the
+     * assumption that the existing users have mostly been deleted.
+     */
+    public static final int FIRST_SYSTEM_ID = 20;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private UserAccounts() {
+    }
+
+    /** Returns {hashed password, salt}, as in OpenMRS's UserServiceImpl. */
+    public static String[] hashPasswordWithNewSalt(String password) {
+        String salt = sha512Hex(System.currentTimeMillis() + "" + random.nextLong());
+        return new String[] {sha512Hex(password + salt), salt};
+    }
+
+    /** Returns a system ID with its check digit, as in OpenMRS's LuhnIdentifierValidator. */
+    public static String getSystemId(int number) {
+        String base = Integer.toString(number);
+        int sum = 0;
+        for (int i = 0; i < base.length(); i++) {
+            int digit = base.charAt(base.length() - 1 - i) - '0';
+            sum += i % 2 == 0 ? 2 * digit - (digit / 5) * 9 : digit;
+        }
+        sum = Math.abs(sum) + 10;
+        return base + "-" + (10 - sum % 10) % 10;
+    }
+
+    private static String sha512Hex(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-512").digest(
+                    s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);  // every JVM has SHA-512
+        }
+    }
+}
@@ -0,0 +1,219 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia;
+
+import java.util.Random;
+
+/**
+ * What a generated ward looks like: the staff, the tents, the patients'
+ * names, and the chart questions with how often each is answered and what
+ * the answers tend to be.  The names of concepts, answers, and locations are
+ * the English names in the Buendia concept dictionary and site setup, which
+ * is how the SQL and JDBC outputs find them in the database.
+ */
+public class WardModel {
+
+    /** A clinician, who gets a user account and a provider record. */
+    public static class User {
+        public final String username;
+        public final String givenName;
+        public final String familyName;
+
+        User(String username, String givenName, String familyName) {
+            this.username = username;
+            this.givenName = givenName;
+            this.familyName = familyName;
+        }
+
+        /** The provider name, which is how encounters refer to the user. */
+        public String getProviderName() {
+            return givenName + " " + familyName;
+        }
+    }
+
+    /** Picks one of several choices, each with its own relative weight. */
+    public static class WeightedChoice {
+        private final String[] choices;
+        private final double[] cumulativeWeights;
+
+        WeightedChoice(Object... choicesAndWeights) {
+            int n = choicesAndWeights.length / 2;
+            choices = new String[n];
+            cumulativeWeights = new double[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                choices[i] = (String) choicesAndWeights[2 * i];
+                total += ((Number) choicesAndWeights[2 * i + 1]).doubleValue();
+                cumulativeWeights[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulativeWeights[i] /= total;
+            }
+        }
+
+        public String pick(Random random) {
+            double r = random.nextDouble();
+            for (int i = 0; i < choices.length - 1; i++) {
+                if (r < cumulativeWeights[i]) {
+                    return choices[i];
+                }
+            }
+            return choices[choices.length - 1];
+        }
+
+        public String[] getChoices() {
+            return choices;
+        }
+    }
+
+    /**
+     * A chart question.  Each encounter answers it with the given probability;
+     * the answer is either a number from a normal distribution (rounded to
+     * one decimal place and kept within bounds) or one of the coded answers.
+     */
+    public static class Question {
+        public final String concept;
+        public final double probability;
+        public final boolean femaleOnly;
+        final WeightedChoice answers;  // null for numeric questions
+        final double mean;
+        final double standardDeviation;
+        final double min;
+        final double max;
+
+        private Question(String concept, double probability, boolean femaleOnly,
+                WeightedChoice answers, double mean, double standardDeviation,
+                double min, double max) {
+            this.concept = concept;
+            this.probability = probability;
+            this.femaleOnly = femaleOnly;
+            this.answers = answers;
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+            this.min = min;
+            this.max = max;
+        }
+
+        static Question numeric(String concept, double probability,
+                double mean, double standardDeviation, double min, double max) {
+            return new Question(concept, probability, false, null,
+                    mean, standardDeviation, min, max);
+        }
+
+        static Question coded(String concept, double probability, WeightedChoice answers) {
+            return new Question(concept, probability, false, answers, 0, 0, 0, 0);
+        }
+
+        static Question codedForWomen(String concept, double probability, WeightedChoice answers) {
+            return new Question(concept, probability, true, answers, 0, 0, 0, 0);
+        }
+
+        /** A symptom checkbox, which is only ever recorded as present. */
+        static Question symptom(String concept, double probability) {
+            return coded(concept, probability, new WeightedChoice("Yes", 1));
+        }
+
+        public boolean isNumeric() {
+            return answers == null;
+        }
+
+        /** Returns the coded answers (empty for a numeric question). */
+        public String[] getAnswers() {
+            return answers == null ? new String[0] : answers.getChoices();
+        }
+
+        /** Returns a Double for a numeric question, or the name of an answer. */
+        public Object pickValue(Random random) {
+            if (answers != null) {
+                return answers.pick(random);
+            }
+            double value = mean + random.nextGaussian() * standardDeviation;
+            return Math.round(Math.max(min, Math.min(max, value)) * 10) / 10.0;
+        }
+    }
+
+    public static final User[] USERS = {
+            new User("guest", "Guest", "User"),
+            new User("jay", "Jay", "Achar"),
+            new User("simon", "Simon", "Collins"),
+            new User("jane", "Jane", "Greig"),
+            new User("ivan", "Ivan", "Gayton"),
+    };
+
+    /** Where patients are assigned, weighted as in the demo site's data. */
+    public static final WeightedChoice ASSIGNED_LOCATIONS = new WeightedChoice(
+            "Suspect 1", 4, "Suspect 2", 7, "Probable 1", 7, "Probable 2", 3,
+            "Confirmed 1", 5, "Confirmed 2", 7, "Confirmed 3", 5,
+            "Confirmed 4", 5, "Confirmed 5", 14);
+
+    /** Where first encounters happen; later ones happen in the patient's tent. */
+    public static final String ADMISSION_LOCATION = "Triage";
+
+    public static final String[] FEMALE_NAMES = {
+            "Fatmata", "Aminata", "Mariama", "Isatu", "Kadiatu", "Hawa", "Adama", "Zainab",
+            "Mabinty", "Fanta", "Jeneba", "Yeabu", "Kumba", "Memuna", "Salamatu", "Tenneh"};
+
+    public static final String[] MALE_NAMES = {
+            "Mohamed", "Ibrahim", "Abu", "Alusine", "Foday", "Sorie", "Abdul", "Momoh",
+            "Sahr", "Lansana", "Brima", "Osman", "Amadu", "Santigie", "Musa", "Alimamy"};
+
+    public static final String[] FAMILY_NAMES = {
+            "Kamara", "Sesay", "Koroma", "Bangura", "Conteh", "Turay", "Kanu", "Jalloh",
+            "Mansaray", "Kargbo", "Fofanah", "Barrie", "Bah", "Kallon", "Samura", "Tarawally"};
+
+    private static final WeightedChoice SEVERITY = new WeightedChoice(
+            "None", 50, "Mild", 25, "Moderate", 15, "Severe", 10);
+
+    /**
+     * The questions on the chart.  General observations are recorded at most
+     * encounters; symptoms are recorded only when present, and the rarer
+     * ones (haemorrhagic signs) much less often.
+     */
+    public static final Question[] QUESTIONS = {
+            Question.numeric("Temperature °C", 0.9, 37.6, 0.9, 35.0, 41.5),
+            Question.codedForWomen("Pregnant", 0.3, new WeightedChoice(
+                    "No", 60, "Unknown", 35, "Yes", 5)),
+            Question.coded("Condition", 0.85, new WeightedChoice(
+                    "Good", 50, "Poor", 35, "Very Poor", 15)),
+            Question.coded("Best Conscious State", 0.7, new WeightedChoice(
+                    "Alert", 85, "Unresponsive", 15)),
+            Question.coded("Mobility", 0.7, new WeightedChoice(
+                    "Walking", 60, "Assisted", 25, "Bed-bound", 15)),
+            Question.coded("Tolerating Diet", 0.6, new WeightedChoice(
+                    "Food", 55, "Fluids", 30, "Nothing", 15)),
+            Question.coded("Hydration", 0.6, new WeightedChoice(
+                    "Well hydrated", 60, "Needs ORS", 30, "IV", 10)),
+            Question.coded("Vomiting", 0.6, SEVERITY),
+            Question.coded("Diarrhoea", 0.6, SEVERITY),
+            Question.coded("Pain Assessment", 0.5, SEVERITY),
+            Question.symptom("IV fitted", 0.15),
+            Question.symptom("Severe Weakness", 0.3),
+            Question.symptom("Nausea", 0.25),
+            Question.symptom("Cough", 0.15),
+            Question.symptom("Dyspnoea", 0.1),
+            Question.symptom("Hiccups", 0.05),
+            Question.symptom("Headache", 0.3),
+            Question.symptom("Chest", 0.1),
+            Question.symptom("Abdominal", 0.2),
+            Question.symptom("Back", 0.15),
+            Question.symptom("Arthralgia/Myalgia", 0.25),
+            Question.symptom("Bleeding", 0.05),
+            Question.symptom("Oral Bleeding", 0.03),
+            Question.symptom("Haemoptysis", 0.02),
+            Question.symptom("Haematemesis", 0.02),
+            Question.symptom("PR Bleeding", 0.02),
+            Question.symptom("Haematuria", 0.02),
+    };
+
+    private WardModel() {
+    }
+}
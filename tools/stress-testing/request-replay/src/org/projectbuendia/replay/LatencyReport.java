@@ -0,0 +1,93 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.replay;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Collects the latencies of replayed requests and reports them per endpoint. */
+public class LatencyReport {
+    private static final String TOTAL = "(all)";
+
+    /** The latencies for one endpoint. */
+    static class Stats {
+        long[] micros = new long[16];
+        int count;
+        int errors;
+        long maxLagMicros;
+
+        void add(long latencyMicros, long lagMicros, boolean error) {
+            if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+            }
+            micros[count++] = latencyMicros;
+            if (error) {
+                errors++;
+            }
+            maxLagMicros = Math.max(maxLagMicros, lagMicros);
+        }
+
+        /** Returns the nearest-rank percentile of the sorted latencies, in ms. */
+        double getPercentileMillis(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1000.0;
+        }
+    }
+
+    private final Map<String, Stats> stats = new TreeMap<>();
+
+    /**
+     * Records one request.
+     * @param latencyMicros the time from sending the request to reading the whole response
+     * @param lagMicros how long after its scheduled time the request was sent
+     * @param error true if the request failed or got an error status
+     */
+    public synchronized void add(String endpoint, long latencyMicros, long lagMicros, boolean error) {
+        getStats(endpoint).add(latencyMicros, lagMicros, error);
+        getStats(TOTAL).add(latencyMicros, lagMicros, error);
+    }
+
+    private Stats getStats(String endpoint) {
+        Stats s = stats.get(endpoint);
+        if (s == null) {
+            s = new Stats();
+            stats.put(endpoint, s);
+        }
+        return s;
+    }
+
+    /** Prints a table of throughput and latency percentiles, one row per endpoint. */
+    public synchronized void print(PrintStream out, long elapsedMillis) {
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        out.printf("%-60s %7s %6s %8s %8s %8s %8s %8s %8s%n", "endpoint", "count", "errors",
+                "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "lag ms");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            if (!entry.getKey().equals(TOTAL)) {
+                printRow(out, entry.getKey(), entry.getValue(), seconds);
+            }
+        }
+        if (stats.containsKey(TOTAL)) {
+            printRow(out, TOTAL, stats.get(TOTAL), seconds);
+        }
+    }
+
+    private void printRow(PrintStream out, String endpoint, Stats s, double seconds) {
+        long[] sorted = Arrays.copyOf(s.micros, s.count);
+        Arrays.sort(sorted);
+        out.printf("%-60s %7d %6d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f%n", endpoint, s.count,
+                s.errors, s.count / seconds, s.getPercentileMillis(sorted, 50),
+                s.getPercentileMillis(sorted, 90), s.getPercentileMillis(sorted, 99),
+                sorted[sorted.length - 1] / 1000.0, s.maxLagMicros / 1000.0);
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.replay;
+
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/** One request as recorded by the server's RequestLogger. */
+public class LoggedRequest {
+    /** Orders requests by the time they were received. */
+    public static final Comparator<LoggedRequest> BY_TIME = new Comparator<LoggedRequest>() {
+        @Override public int compare(LoggedRequest a, LoggedRequest b) {
+            return Long.compare(a.timeMillis, b.timeMillis);
+        }
+    };
+
+    private static final Pattern UUID_OR_NUMBER = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9]+");
+
+    public final long timeMillis;
+    public final String client;  // the client's IP address, which names the log file
+    public final String method;
+    public final String uri;  // the path and query string, e.g. "/openmrs/ws/...?since=..."
+    public final String body;  // the JSON body, or null if it wasn't recorded
+
+    public LoggedRequest(long timeMillis, String client, String method, String uri, String body) {
+        this.timeMillis = timeMillis;
+        this.client = client;
+        this.method = method;
+        this.uri = uri;
+        this.body = body;
+    }
+
+    /** Returns true for requests that change data on the server. */
+    public boolean isWrite() {
+        return !method.equals("GET") && !method.equals("HEAD");
+    }
+
+    /**
+     * Returns the endpoint that the request is reported under: the method and
+     * the path, without the query string and with UUIDs and numbers replaced
+     * by "*", e.g. "GET /openmrs/ws/rest/v1/projectbuendia/patients/*".
+     */
+    public String getEndpoint() {
+        int query = uri.indexOf('?');
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        StringBuilder endpoint = new StringBuilder(method).append(' ');
+        String separator = "";
+        for (String segment : path.split("/", -1)) {
+            endpoint.append(separator);
+            endpoint.append(UUID_OR_NUMBER.matcher(segment).matches() ? "*" : segment);
+            separator = "/";
+        }
+        return endpoint.toString();
+    }
+}
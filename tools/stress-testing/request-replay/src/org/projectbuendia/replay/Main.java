@@ -0,0 +1,119 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.replay;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Replays logged REST requests against a server and reports their latencies. */
+public class Main {
+    static final String USAGE =
+            "Usage: java -jar request-replay.jar [options] LOG_FILE_OR_DIR...\n"
+            + "\n"
+            + "Replays the requests in the server's request logs, e.g. the replay logs in\n"
+            + "/var/log/large/requests/replay, and reports throughput and latency per endpoint.\n"
+            + "\n"
+            + "  --server URL         server to send requests to (default http://localhost:9000)\n"
+            + "  --user NAME          user to log in as (default buendia)\n"
+            + "  --password PASSWORD  password for the user (default buendia)\n"
+            + "  --concurrency N      number of requests in flight at once (default 8)\n"
+            + "  --speed X            replay X times faster than logged; 0 sends requests as\n"
+            + "                       fast as possible (default 1)\n"
+            + "  --include-writes     also replay POST and other requests that change data\n";
+
+    public static void main(String[] args) throws Exception {
+        String server = "http://localhost:9000";
+        String user = "buendia";
+        String password = "buendia";
+        int concurrency = 8;
+        double speed = 1;
+        boolean includeWrites = false;
+        List<File> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--help")) {
+                    System.out.print(USAGE);
+                    return;
+                } else if (arg.equals("--include-writes")) {
+                    includeWrites = true;
+                } else if (arg.startsWith("--")) {
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    String value = args[++i];
+                    switch (arg) {
+                        case "--server":
+                            server = value;
+                            break;
+                        case "--user":
+                            user = value;
+                            break;
+                        case "--password":
+                            password = value;
+                            break;
+                        case "--concurrency":
+                            concurrency = Integer.parseInt(value);
+                            break;
+                        case "--speed":
+                            speed = Double.parseDouble(value);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                } else {
+                    paths.add(new File(arg));
+                }
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("No log files given");
+            }
+            if (concurrency < 1 || speed < 0) {
+                throw new IllegalArgumentException("--concurrency must be positive and --speed not negative");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<LoggedRequest> requests = new ArrayList<>();
+        int skipped = 0;
+        for (LoggedRequest request : RequestLogParser.parse(paths)) {
+            // A write can only be replayed if its body was recorded.
+            if (request.isWrite() && (!includeWrites || request.body == null)) {
+                skipped++;
+            } else {
+                requests.add(request);
+            }
+        }
+        if (requests.isEmpty()) {
+            System.err.println("No requests to replay (" + skipped + " writes skipped)");
+            System.exit(1);
+        }
+        Collections.sort(requests, LoggedRequest.BY_TIME);
+        long loggedMillis = requests.get(requests.size() - 1).timeMillis - requests.get(0).timeMillis;
+        System.out.println("Replaying " + requests.size() + " requests logged over "
+                + loggedMillis / 1000 + " s to " + server + " (" + skipped + " writes skipped)");
+
+        long startMillis = System.currentTimeMillis();
+        LatencyReport report = new Replayer(server, user, password, speed, concurrency)
+                .replay(requests);
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        System.out.println("Replayed in " + elapsedMillis / 1000.0 + " s");
+        report.print(System.out, elapsedMillis);
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends logged requests to a server on the same schedule as they were
+ * logged, optionally compressed in time, from a fixed number of concurrent
+ * connections.  If the server can't keep up, requests queue up and are sent
+ * late; the report shows how late as the lag.
+ */
+public class Replayer {
+    private final String server;
+    private final String authorization;
+    private final double speed;
+    private final int concurrency;
+    private final LatencyReport report = new LatencyReport();
+
+    /**
+     * @param server the scheme, host, and port to send the logged URIs to
+     * @param user the user to log in as, or null
+     * @param speed how many times faster than logged to send requests, or 0
+     *     to send them as fast as the connections allow
+     */
+    public Replayer(String server, String user, String password, double speed, int concurrency) {
+        this.server = server.replaceAll("/+$", "");
+        this.authorization = user == null ? null : "Basic " + Base64.getEncoder()
+                .encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.speed = speed;
+        this.concurrency = concurrency;
+    }
+
+    /** Replays the requests, which must be sorted by time, and returns the report. */
+    public LatencyReport replay(List<LoggedRequest> requests) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long firstMillis = requests.get(0).timeMillis;
+        long startNanos = System.nanoTime();
+        for (final LoggedRequest request : requests) {
+            final long dueNanos = speed > 0 ? startNanos
+                    + (long) ((request.timeMillis - firstMillis) * 1e6 / speed) : startNanos;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    send(request, dueNanos);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return report;
+    }
+
+    private void send(LoggedRequest request, long dueNanos) {
+        long sentNanos = System.nanoTime();
+        boolean error = true;
+        try {
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL(server + request.uri).openConnection();
+            connection.setRequestMethod(request.method);
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            if (request.body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request.body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            // Read the whole response, so the latency includes producing it,
+            // and so the connection can be reused.
+            try (InputStream in = status < 400
+                    ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[1 << 16];
+                    while (in.read(buffer) >= 0) { }
+                }
+            }
+            error = status >= 400;
+        } catch (IOException e) {
+            System.err.println(request.method + " " + request.uri + ": " + e);
+        }
+        long doneNanos = System.nanoTime();
+        report.add(request.getEndpoint(), (doneNanos - sentNanos) / 1000,
+                Math.max(0, sentNanos - dueNanos) / 1000, error);
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright 2015 The Project Buendia Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy
+// of the License at: http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distrib-
+// uted under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+// OR CONDITIONS OF ANY KIND, either express or implied.  See the License for
+// specific language governing permissions and limitations under the License.
+
+package org.projectbuendia.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the logs written by the server's RequestLogger, which names each log
+ * file after the client's IP address.  Two kinds of log are understood:
+ * <ul>
+ * <li>Replay logs ("replay/[ip].tsv"), with one line per request: the time in
+ *     millis, the method, the URI with its query string, and the JSON body
+ *     or "-", separated by tabs.
+ * <li>Request logs ("[ip]"), the human-readable logs, whose "-&gt;" lines give
+ *     the time to the second, the method, and the URI.  These don't record
+ *     request bodies, so writes read from them can't be replayed.
+ * </ul>
+ */
+public class RequestLogParser {
+    private static final String REPLAY_SUFFIX = ".tsv";
+
+    /** Matches the start of a request in a request log. */
+    private static final Pattern REQUEST_LINE = Pattern.compile(
+            "\u001b\\[32m(\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d)\u001b\\[0m -> \\S+: "
+                    + "\u001b\\[33m([A-Z]+) (\\S+)\u001b\\[0m.*");
+
+    /** Reads all the requests in the given files, and the files in the given directories. */
+    public static List<LoggedRequest> parse(List<File> paths) throws IOException {
+        List<LoggedRequest> requests = new ArrayList<>();
+        for (File path : paths) {
+            if (path.isDirectory()) {
+                File[] files = path.listFiles();
+                Arrays.sort(files);
+                for (File file : files) {
+                    if (file.isFile()) {
+                        parseFile(file, requests);
+                    }
+                }
+            } else {
+                parseFile(path, requests);
+            }
+        }
+        return requests;
+    }
+
+    private static void parseFile(File file, List<LoggedRequest> requests) throws IOException {
+        String name = file.getName();
+        boolean replayLog = name.endsWith(REPLAY_SUFFIX);
+        String client = replayLog ? name.substring(0, name.length() - REPLAY_SUFFIX.length()) : name;
+        // The request log timestamps are in the server's local time zone.
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (replayLog) {
+                    String[] fields = line.split("\t", 4);
+                    if (fields.length == 4) {
+                        requests.add(new LoggedRequest(Long.parseLong(fields[0]), client,
+                                fields[1], fields[2], fields[3].equals("-") ? null : fields[3]));
+                    }
+                } else {
+                    Matcher matcher = REQUEST_LINE.matcher(line);
+                    if (matcher.matches()) {
+                        try {
+                            requests.add(new LoggedRequest(format.parse(matcher.group(1)).getTime(),
+                                    client, matcher.group(2), matcher.group(3), null));
+                        } catch (ParseException e) {
+                            // REQUEST_LINE only matches well-formed timestamps.
+                            throw new AssertionError(e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}